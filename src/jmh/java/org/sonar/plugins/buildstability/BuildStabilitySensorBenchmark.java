@@ -0,0 +1,137 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.buildstability.ci.CiConnectionPool;
+import org.sonar.plugins.buildstability.ci.api.Build;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time and allocations of the analysis of a build history, from the builds as retrieved, most recent first, to the
+ * saved measures.
+ * <p/>
+ * Histories alternate between passing and failing streaks: builds fail in the given proportion, and failing streaks
+ * last the given number of builds on average.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BuildStabilitySensorBenchmark {
+  private static final long START = 1365285600000L;
+  private static final long PERIOD = 20 * 60 * 1000L;
+
+  @Param({"1000", "10000", "100000"})
+  public int builds;
+
+  @Param({"0.05", "0.3"})
+  public double failureRate;
+
+  @Param({"1", "10"})
+  public int failingStreak;
+
+  private CiConnectionPool connectionPool;
+  private BuildStabilitySensor sensor;
+  private List<Build> history;
+  private SavedMeasures savedMeasures;
+  private SensorContext context;
+
+  @Setup
+  public void setUp() {
+    connectionPool = new CiConnectionPool(new Settings());
+    sensor = new BuildStabilitySensor(new Settings(), null, connectionPool);
+    history = generateHistory(builds, failureRate, failingStreak);
+    savedMeasures = new SavedMeasures();
+    context = (SensorContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {SensorContext.class}, savedMeasures);
+  }
+
+  @TearDown
+  public void tearDown() {
+    connectionPool.stop();
+  }
+
+  /**
+   * A failing streak ends with probability <code>1 / failingStreak</code>, and a passing streak with the probability
+   * which makes builds fail in the given proportion in the long run.
+   */
+  static List<Build> generateHistory(int count, double failureRate, int failingStreak) {
+    Random random = new Random(count);
+    double failureProbability = Math.min(1, failureRate / (failingStreak * (1 - failureRate)));
+    List<Build> history = new ArrayList<Build>(count);
+    boolean failing = false;
+    for (int number = 1; number <= count; number++) {
+      failing = failing ? random.nextDouble() >= 1.0 / failingStreak : random.nextDouble() < failureProbability;
+      double duration = 60000 + random.nextInt(240000);
+      history.add(new Build(number, START + number * PERIOD, failing ? "FAILURE" : "SUCCESS", !failing, duration));
+    }
+    // As retrieved from CI servers
+    Collections.reverse(history);
+    return history;
+  }
+
+  @Benchmark
+  public int analyseBuilds() {
+    // The builds are copied to a BuildHistory, which is sorted, so that the retrieved list is left untouched
+    sensor.analyseBuilds(history, context);
+    return savedMeasures.count;
+  }
+
+  /**
+   * Stub of the sensor context, keeping the last saved measure so that computing it can not be optimized away.
+   */
+  private static final class SavedMeasures implements InvocationHandler {
+    private int count;
+    private Object last;
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      if ("saveMeasure".equals(method.getName())) {
+        count++;
+        last = args[args.length - 1];
+        return last;
+      }
+      return null;
+    }
+  }
+}
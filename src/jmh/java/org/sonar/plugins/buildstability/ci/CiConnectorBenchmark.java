@@ -0,0 +1,136 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci;
+
+import org.mortbay.jetty.Request;
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.handler.AbstractHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.buildstability.ci.api.Build;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Whole path of a response through {@link CiConnector}, from a local server: sending the request, decompressing and
+ * decoding the response, and unmarshalling it. Responses are prepared once, so that the server costs as little as
+ * possible.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CiConnectorBenchmark {
+  private static final int PAGE_SIZE = 1000;
+
+  @Param({Payloads.XML, Payloads.JSON})
+  public String format;
+
+  @Param({"false", "true"})
+  public boolean compressed;
+
+  private Server jetty;
+  private CiConnectionPool connectionPool;
+  private CiConnector connector;
+
+  @Setup
+  public void setUp() throws Exception {
+    final Map<String, byte[]> responses = new HashMap<String, byte[]>();
+    responses.put("/job/bench/1/api/" + format + "/", encode(Payloads.build("Jenkins", format)));
+    responses.put("/job/bench/api/" + format, encode(Payloads.buildsPage("Jenkins", format, PAGE_SIZE)));
+    final String contentType = Payloads.JSON.equals(format) ? "application/json;charset=utf-8" : "application/xml;charset=utf-8";
+
+    jetty = new Server(0);
+    jetty.setHandler(new AbstractHandler() {
+      @Override
+      public void handle(String target, HttpServletRequest request, HttpServletResponse response, int dispatch) throws IOException {
+        byte[] body = responses.get(target);
+        if (body == null) {
+          response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        } else {
+          response.setContentType(contentType);
+          if (compressed) {
+            response.setHeader("Content-Encoding", "gzip");
+          }
+          response.setContentLength(body.length);
+          response.getOutputStream().write(body);
+        }
+        ((Request) request).setHandled(true);
+      }
+    });
+    jetty.start();
+
+    connectionPool = new CiConnectionPool(new Settings());
+    connector = CiFactory.create("Jenkins:http://localhost:" + jetty.getConnectors()[0].getLocalPort() + "/job/bench", null, null, false,
+      connectionPool);
+    connector.getServer().setUseJson(Payloads.JSON.equals(format));
+  }
+
+  private byte[] encode(String response) throws IOException {
+    byte[] bytes = response.getBytes("UTF-8");
+    if (!compressed) {
+      return bytes;
+    }
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    GZIPOutputStream gzip = new GZIPOutputStream(output);
+    gzip.write(bytes);
+    gzip.close();
+    return output.toByteArray();
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    connectionPool.stop();
+    jetty.stop();
+  }
+
+  @Benchmark
+  public Build singleBuild() throws Exception {
+    return connector.getBuild("1");
+  }
+
+  @Benchmark
+  public List<Build> buildsPage() throws Exception {
+    return connector.getBuildsPage(new Date(0), 0, PAGE_SIZE);
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci;
+
+import com.google.gson.stream.JsonReader;
+import org.dom4j.io.SAXReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sonar.plugins.buildstability.ci.api.AbstractServer;
+import org.sonar.plugins.buildstability.ci.api.Build;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unmarshalling of a single build, and of a page of 1,000 builds, from in-memory responses, so that parsers may be
+ * compared without any network.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UnmarshallerBenchmark {
+  private static final int PAGE_SIZE = 1000;
+
+  @Param({"Jenkins", "Bamboo", "TeamCity"})
+  public String system;
+
+  @Param({Payloads.XML, Payloads.JSON})
+  public String format;
+
+  private AbstractServer server;
+  private byte[] build;
+  private byte[] buildsPage;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = Payloads.server(system);
+    build = Payloads.build(system, format).getBytes("UTF-8");
+    buildsPage = Payloads.buildsPage(system, format, PAGE_SIZE).getBytes("UTF-8");
+  }
+
+  @Benchmark
+  public Build singleBuild() throws Exception {
+    if (Payloads.JSON.equals(format)) {
+      JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(build), "UTF-8"));
+      return server.getBuildJsonUnmarshaller().toModel(reader);
+    }
+    SAXReader reader = new SAXReader();
+    reader.setEncoding("UTF-8");
+    return server.getBuildUnmarshaller().toModel(reader.read(new ByteArrayInputStream(build)).getRootElement());
+  }
+
+  @Benchmark
+  public void buildsPage(final Blackhole blackhole) throws Exception {
+    StreamingUnmarshaller.Handler<Build> handler = new StreamingUnmarshaller.Handler<Build>() {
+      @Override
+      public void handle(Build build) {
+        blackhole.consume(build);
+      }
+    };
+    if (Payloads.JSON.equals(format)) {
+      new JsonStreamingUnmarshaller<Build>(server.getBuildsArrayName(), server.getBuildJsonUnmarshaller())
+        .unmarshal(new InputStreamReader(new ByteArrayInputStream(buildsPage), "UTF-8"), handler);
+    } else {
+      new StreamingUnmarshaller<Build>(server.getBuildsElementName(), server.getBuildUnmarshaller())
+        .unmarshal(new ByteArrayInputStream(buildsPage), "UTF-8", handler);
+    }
+  }
+}
@@ -95,6 +95,50 @@ public class BuildStabilityMetrics implements Metrics {
     .setDomain(DOMAIN_BUILD)
     .create();
 
+  /**
+   * Median duration of successful builds.
+   */
+  public static final Metric<Integer> MEDIAN_DURATION = new Metric.Builder("build_median_duration", "Median duration",
+    Metric.ValueType.MILLISEC)
+    .setDescription("Median duration of successful builds")
+    .setDirection(Metric.DIRECTION_WORST)
+    .setQualitative(false)
+    .setDomain(DOMAIN_BUILD)
+    .create();
+
+  /**
+   * Duration not exceeded by 90% of successful builds.
+   */
+  public static final Metric<Integer> P90_DURATION = new Metric.Builder("build_p90_duration", "90th percentile of duration",
+    Metric.ValueType.MILLISEC)
+    .setDescription("Duration not exceeded by 90% of successful builds")
+    .setDirection(Metric.DIRECTION_WORST)
+    .setQualitative(false)
+    .setDomain(DOMAIN_BUILD)
+    .create();
+
+  /**
+   * Duration not exceeded by 95% of successful builds.
+   */
+  public static final Metric<Integer> P95_DURATION = new Metric.Builder("build_p95_duration", "95th percentile of duration",
+    Metric.ValueType.MILLISEC)
+    .setDescription("Duration not exceeded by 95% of successful builds")
+    .setDirection(Metric.DIRECTION_WORST)
+    .setQualitative(false)
+    .setDomain(DOMAIN_BUILD)
+    .create();
+
+  /**
+   * Duration not exceeded by 99% of successful builds.
+   */
+  public static final Metric<Integer> P99_DURATION = new Metric.Builder("build_p99_duration", "99th percentile of duration",
+    Metric.ValueType.MILLISEC)
+    .setDescription("Duration not exceeded by 99% of successful builds")
+    .setDirection(Metric.DIRECTION_WORST)
+    .setQualitative(false)
+    .setDomain(DOMAIN_BUILD)
+    .create();
+
   /**
    * Average time to fix a failure.
    */
@@ -155,6 +199,10 @@ public class BuildStabilityMetrics implements Metrics {
       AVG_DURATION,
       LONGEST_DURATION,
       SHORTEST_DURATION,
+      MEDIAN_DURATION,
+      P90_DURATION,
+      P95_DURATION,
+      P99_DURATION,
 
       AVG_TIME_TO_FIX,
       LONGEST_TIME_TO_FIX,
@@ -21,7 +21,9 @@ package org.sonar.plugins.buildstability;
 
 import org.sonar.api.Properties;
 import org.sonar.api.Property;
+import org.sonar.api.PropertyType;
 import org.sonar.api.SonarPlugin;
+import org.sonar.plugins.buildstability.ci.CiConnectionPool;
 
 import java.util.Arrays;
 import java.util.List;
@@ -68,6 +70,16 @@ import java.util.List;
     project = true,
     module = false
   ),
+  @Property(
+    key = BuildStabilitySensor.TOKEN_PROPERTY,
+    defaultValue = "",
+    name = "API token",
+    description = "API token to connect with Continuous Integration Server, used instead of the password with Basic authentication. "
+      + "It is cheaper than login with j_security_check, which is then not used.",
+    global = true,
+    project = true,
+    module = false
+  ),
   @Property(
     key = BuildStabilitySensor.USE_JSECURITYCHECK_PROPERTY,
     defaultValue = BuildStabilitySensor.USE_JSECURITYCHECK_DEFAULT_VALUE + "",
@@ -76,6 +88,142 @@ import java.util.List;
     global = true,
     project = true,
     module = false
+  ),
+  @Property(
+    key = BuildStabilitySensor.USE_JSON_PROPERTY,
+    defaultValue = BuildStabilitySensor.USE_JSON_DEFAULT_VALUE + "",
+    name = "Use JSON API",
+    description = "Retrieve builds in JSON, which is lighter than XML. XML is used if the CI server does not answer in JSON.",
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.BOOLEAN
+  ),
+  @Property(
+    key = BuildStabilitySensor.FETCH_THREADS_PROPERTY,
+    defaultValue = BuildStabilitySensor.FETCH_THREADS_DEFAULT_VALUE + "",
+    name = "Fetch threads",
+    description = "Number of builds retrieved concurrently, when the CI server is not able to list builds in a single request.",
+    global = true,
+    project = true,
+    module = false
+  ),
+  @Property(
+    key = BuildStabilitySensor.VIRTUAL_THREADS_PROPERTY,
+    defaultValue = BuildStabilitySensor.VIRTUAL_THREADS_DEFAULT_VALUE + "",
+    name = "Use virtual threads",
+    description = "Retrieve each build on its own virtual thread, when running on Java 21 or later, rather than on a pool of fetch threads. "
+      + "The number of builds retrieved concurrently is still bounded by the number of fetch threads.",
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.BOOLEAN
+  ),
+  @Property(
+    key = BuildStabilitySensor.MAX_REQUESTS_PER_SECOND_PROPERTY,
+    defaultValue = "",
+    name = "Maximum requests per second",
+    description = "Maximum rate of requests sent to the CI server, shared by the projects analysed together with the same limit. Leave blank for no limit.",
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.FLOAT
+  ),
+  @Property(
+    key = BuildStabilitySensor.ADAPTIVE_CONCURRENCY_PROPERTY,
+    defaultValue = BuildStabilitySensor.ADAPTIVE_CONCURRENCY_DEFAULT_VALUE + "",
+    name = "Adaptive concurrency",
+    description = "Lower the number of concurrent requests when the CI server answers with 429 or 5xx, or slows down, "
+      + "and raise it again while the server keeps up, up to the maximum number of connections per server.",
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.BOOLEAN
+  ),
+  @Property(
+    key = BuildStabilitySensor.TIMEOUT_PROPERTY,
+    defaultValue = BuildStabilitySensor.TIMEOUT_DEFAULT_VALUE + "",
+    name = "Timeout",
+    description = "Time in seconds after which no more builds are retrieved, measures being computed on the builds retrieved so far. "
+      + "Set to 0 for no limit.",
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.INTEGER
+  ),
+  @Property(
+    key = BuildStabilitySensor.MAX_RETRIES_PROPERTY,
+    defaultValue = BuildStabilitySensor.MAX_RETRIES_DEFAULT_VALUE + "",
+    name = "Maximum retries",
+    description = "Number of times a request is sent again after a network error, or a 429, 502, 503 or 504 status.",
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.INTEGER
+  ),
+  @Property(
+    key = BuildStabilitySensor.CACHE_DIR_PROPERTY,
+    defaultValue = "",
+    name = "Build cache directory",
+    description = "Directory where finished builds and CI server sessions are kept between analyses. Leave blank to keep builds in the working directory of the analysis, and no session.",
+    global = true,
+    project = true,
+    module = false
+  ),
+  @Property(
+    key = BuildStabilitySensor.CACHE_SIZE_PROPERTY,
+    defaultValue = BuildStabilitySensor.CACHE_SIZE_DEFAULT_VALUE + "",
+    name = "Build cache size",
+    description = "Maximum number of finished builds kept between analyses. Set to 0 to disable the build cache.",
+    global = true,
+    project = true,
+    module = false
+  ),
+  @Property(
+    key = BuildStabilitySensor.INCREMENTAL_PROPERTY,
+    defaultValue = BuildStabilitySensor.INCREMENTAL_DEFAULT_VALUE + "",
+    name = "Incremental analysis",
+    description = "Only retrieve builds newer than the ones of the previous analysis, and take older ones from the build cache.",
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.BOOLEAN
+  ),
+  @Property(
+    key = CiConnectionPool.MAX_CONNECTIONS_PROPERTY,
+    defaultValue = CiConnectionPool.MAX_CONNECTIONS_DEFAULT_VALUE + "",
+    name = "Maximum connections",
+    description = "Maximum number of connections kept open to all Continuous Integration Servers.",
+    global = true,
+    project = false,
+    module = false
+  ),
+  @Property(
+    key = CiConnectionPool.MAX_CONNECTIONS_PER_ROUTE_PROPERTY,
+    defaultValue = CiConnectionPool.MAX_CONNECTIONS_PER_ROUTE_DEFAULT_VALUE + "",
+    name = "Maximum connections per server",
+    description = "Maximum number of connections kept open to a single Continuous Integration Server.",
+    global = true,
+    project = false,
+    module = false
+  ),
+  @Property(
+    key = CiConnectionPool.CONNECT_TIMEOUT_PROPERTY,
+    defaultValue = CiConnectionPool.CONNECT_TIMEOUT_DEFAULT_VALUE + "",
+    name = "Connect timeout",
+    description = "Timeout in milliseconds to establish a connection with Continuous Integration Server.",
+    global = true,
+    project = false,
+    module = false
+  ),
+  @Property(
+    key = CiConnectionPool.SOCKET_TIMEOUT_PROPERTY,
+    defaultValue = CiConnectionPool.SOCKET_TIMEOUT_DEFAULT_VALUE + "",
+    name = "Socket timeout",
+    description = "Timeout in milliseconds to wait for data from Continuous Integration Server.",
+    global = true,
+    project = false,
+    module = false
   )
 })
 public class BuildStabilityPlugin extends SonarPlugin {
@@ -83,6 +231,7 @@ public class BuildStabilityPlugin extends SonarPlugin {
   public List getExtensions() {
     return Arrays.asList(
       BuildStabilityMetrics.class,
+      CiConnectionPool.class,
       BuildStabilitySensor.class,
       BuildStabilityWidget.class,
       BuildStabilityChart.class);
@@ -24,17 +24,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.Sensor;
 import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.config.Settings;
 import org.sonar.api.measures.Measure;
-import org.sonar.api.measures.PropertiesBuilder;
 import org.sonar.api.resources.Project;
+import org.sonar.plugins.buildstability.ci.BuildCache;
+import org.sonar.plugins.buildstability.ci.CiConnectionPool;
 import org.sonar.plugins.buildstability.ci.CiConnector;
 import org.sonar.plugins.buildstability.ci.CiFactory;
 import org.sonar.plugins.buildstability.ci.MavenCiConfiguration;
+import org.sonar.plugins.buildstability.ci.RequestThrottle;
 import org.sonar.plugins.buildstability.ci.api.Build;
+import org.sonar.plugins.buildstability.ci.api.BuildHistory;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
+import java.io.File;
 import java.util.*;
 
 /**
@@ -47,23 +53,47 @@ public class BuildStabilitySensor implements Sensor {
   public static final int DAYS_DEFAULT_VALUE = 30;
   public static final String USERNAME_PROPERTY = "sonar.build-stability.username.secured";
   public static final String PASSWORD_PROPERTY = "sonar.build-stability.password.secured";
+  public static final String TOKEN_PROPERTY = "sonar.build-stability.token.secured";
   public static final String USE_JSECURITYCHECK_PROPERTY = "sonar.build-stability.use_jsecuritycheck";
   public static final boolean USE_JSECURITYCHECK_DEFAULT_VALUE = false;
+  public static final String USE_JSON_PROPERTY = "sonar.build-stability.use_json";
+  public static final boolean USE_JSON_DEFAULT_VALUE = false;
   public static final String CI_URL_PROPERTY = "sonar.build-stability.url";
+  public static final String FETCH_THREADS_PROPERTY = "sonar.build-stability.fetch_threads";
+  public static final int FETCH_THREADS_DEFAULT_VALUE = 1;
+  public static final String VIRTUAL_THREADS_PROPERTY = "sonar.build-stability.virtual_threads";
+  public static final boolean VIRTUAL_THREADS_DEFAULT_VALUE = true;
+  public static final String MAX_REQUESTS_PER_SECOND_PROPERTY = "sonar.build-stability.max_requests_per_second";
+  public static final String ADAPTIVE_CONCURRENCY_PROPERTY = "sonar.build-stability.adaptive_concurrency";
+  public static final boolean ADAPTIVE_CONCURRENCY_DEFAULT_VALUE = false;
+  public static final String MAX_RETRIES_PROPERTY = "sonar.build-stability.max_retries";
+  public static final int MAX_RETRIES_DEFAULT_VALUE = CiConnector.DEFAULT_MAX_RETRIES;
+  public static final String TIMEOUT_PROPERTY = "sonar.build-stability.timeout";
+  public static final int TIMEOUT_DEFAULT_VALUE = 300;
+  public static final String CACHE_DIR_PROPERTY = "sonar.build-stability.cache_dir";
+  public static final String CACHE_SIZE_PROPERTY = "sonar.build-stability.cache_size";
+  public static final int CACHE_SIZE_DEFAULT_VALUE = 10000;
+  public static final String INCREMENTAL_PROPERTY = "sonar.build-stability.incremental";
+  public static final boolean INCREMENTAL_DEFAULT_VALUE = false;
 
   private final Settings settings;
+  private final FileSystem fileSystem;
+  private final CiConnectionPool connectionPool;
   private final MavenCiConfiguration mavenCiConfiguration;
 
-  public BuildStabilitySensor(Settings settings, @Nullable MavenCiConfiguration mavenCiConfiguration) {
+  public BuildStabilitySensor(Settings settings, FileSystem fileSystem, CiConnectionPool connectionPool,
+    @Nullable MavenCiConfiguration mavenCiConfiguration) {
     this.settings = settings;
+    this.fileSystem = fileSystem;
+    this.connectionPool = connectionPool;
     this.mavenCiConfiguration = mavenCiConfiguration;
   }
 
   /**
    * In case we are not in a Maven build this constructor will be called
    */
-  public BuildStabilitySensor(Settings settings) {
-    this(settings, null /* Not in a Maven build */);
+  public BuildStabilitySensor(Settings settings, FileSystem fileSystem, CiConnectionPool connectionPool) {
+    this(settings, fileSystem, connectionPool, null /* Not in a Maven build */);
   }
 
   @Override
@@ -87,24 +117,50 @@ public class BuildStabilitySensor implements Sensor {
 
   @Override
   public void analyse(Project project, SensorContext context) {
+    long start = System.currentTimeMillis();
     String ciUrl = getCiUrl(project);
     LOG.info("CI URL: {}", ciUrl);
     String username = settings.getString(USERNAME_PROPERTY);
     String password = settings.getString(PASSWORD_PROPERTY);
     boolean useJSecurityCheck = settings.getBoolean(USE_JSECURITYCHECK_PROPERTY);
-    List<Build> builds;
+    String token = settings.getString(TOKEN_PROPERTY);
+    if (StringUtils.isNotBlank(token)) {
+      // API tokens are sent with Basic authentication, which needs no login request
+      password = token;
+      useJSecurityCheck = false;
+    }
+    BuildHistory builds;
     try {
-      CiConnector connector = CiFactory.create(ciUrl, username, password, useJSecurityCheck);
+      CiConnector connector = CiFactory.create(ciUrl, username, password, useJSecurityCheck, connectionPool);
       if (connector == null) {
         LOG.warn("Unknown CiManagement system or incorrect URL: {}", ciUrl);
         return;
       }
+      connector.getServer().setCacheDirectory(getSessionDirectory());
+      connector.getServer().setUseJson(settings.getBoolean(USE_JSON_PROPERTY));
+      connector.setFetchThreads(settings.getInt(FETCH_THREADS_PROPERTY));
+      connector.setVirtualThreads(settings.getBoolean(VIRTUAL_THREADS_PROPERTY));
+      connector.setThrottle(getThrottle(connector));
+      int timeout = settings.hasKey(TIMEOUT_PROPERTY) ? settings.getInt(TIMEOUT_PROPERTY) : TIMEOUT_DEFAULT_VALUE;
+      if (timeout > 0) {
+        connector.setDeadline(start + timeout * 1000L);
+      }
+      if (settings.hasKey(MAX_RETRIES_PROPERTY)) {
+        connector.setMaxRetries(settings.getInt(MAX_RETRIES_PROPERTY));
+      }
+      connector.setBuildCache(loadBuildCache(ciUrl));
+      connector.setIncremental(settings.getBoolean(INCREMENTAL_PROPERTY));
       int daysToRetrieve = settings.getInt(DAYS_PROPERTY);
       Calendar calendar = Calendar.getInstance();
       calendar.add(Calendar.DAY_OF_MONTH, -daysToRetrieve);
       Date date = calendar.getTime();
-      builds = connector.getBuildsSince(date);
+      builds = connector.getBuildHistorySince(date);
       LOG.info("Retrieved {} builds since {}", builds.size(), date);
+      if (connector.isDeadlineExceeded()) {
+        LOG.warn("Time budget of {} seconds exhausted, measures are computed on the {} most recent builds only", timeout, builds.size());
+      } else if (!connector.isComplete()) {
+        LOG.warn("Older builds could not be retrieved, measures are computed on the most recent builds only");
+      }
     } catch (Exception e) {
       LOG.error(e.getMessage(), e);
       return;
@@ -112,86 +168,92 @@ public class BuildStabilitySensor implements Sensor {
     analyseBuilds(builds, context);
   }
 
-  protected void analyseBuilds(List<Build> builds, SensorContext context) {
-    Collections.sort(builds, new Comparator<Build>() {
-      @Override
-      public int compare(Build o1, Build o2) {
-        return o1.getNumber() - o2.getNumber();
-      }
-    });
-
-    PropertiesBuilder<Integer, Double> durationsBuilder = new PropertiesBuilder<Integer, Double>(BuildStabilityMetrics.DURATIONS);
-    PropertiesBuilder<Integer, String> resultsBuilder = new PropertiesBuilder<Integer, String>(BuildStabilityMetrics.RESULTS);
-
-    double successful = 0;
-    double failed = 0;
-    double duration = 0;
-    double shortest = Double.POSITIVE_INFINITY;
-    double longest = Double.NEGATIVE_INFINITY;
-
-    double totalTimeToFix = 0;
-    double totalBuildsToFix = 0;
-    double longestTimeToFix = Double.NEGATIVE_INFINITY;
-    int fixes = 0;
-    Build firstFailed = null;
-
-    for (Build build : builds) {
-      LOG.debug(build.toString());
-
-      int buildNumber = build.getNumber();
-      double buildDuration = build.getDuration();
-      resultsBuilder.add(buildNumber, build.isSuccessful() ? "g" : "r");
-      durationsBuilder.add(buildNumber, buildDuration / 1000);
-      if (build.isSuccessful()) {
-        successful++;
-        duration += buildDuration;
-        shortest = Math.min(shortest, buildDuration);
-        longest = Math.max(longest, buildDuration);
-        if (firstFailed != null) {
-          // Build fixed
-          long buildsToFix = ((long) build.getNumber()) - firstFailed.getNumber();
-          totalBuildsToFix += buildsToFix;
-          double timeToFix = build.getTimestamp() - firstFailed.getTimestamp();
-          totalTimeToFix += timeToFix;
-          longestTimeToFix = Math.max(longestTimeToFix, timeToFix);
-          fixes++;
-          firstFailed = null;
-        }
-      } else {
-        failed++;
-        if (firstFailed == null) {
-          // Build failed
-          firstFailed = build;
-        }
-      }
+  @CheckForNull
+  protected RequestThrottle getThrottle(CiConnector connector) {
+    double requestsPerSecond = settings.hasKey(MAX_REQUESTS_PER_SECOND_PROPERTY) ? settings.getDouble(MAX_REQUESTS_PER_SECOND_PROPERTY) : 0;
+    boolean adaptive = settings.getBoolean(ADAPTIVE_CONCURRENCY_PROPERTY);
+    if (requestsPerSecond <= 0 && !adaptive) {
+      return null;
     }
+    return connectionPool.getThrottle(connector.getServer().getHost(), requestsPerSecond, adaptive);
+  }
 
-    double count = successful + failed;
+  @CheckForNull
+  protected BuildCache loadBuildCache(String ciUrl) {
+    int cacheSize = settings.getInt(CACHE_SIZE_PROPERTY);
+    if (cacheSize <= 0) {
+      return null;
+    }
+    return BuildCache.load(getCacheDirectory(), ciUrl, cacheSize);
+  }
 
-    context.saveMeasure(new Measure(BuildStabilityMetrics.BUILDS, count));
-    context.saveMeasure(new Measure(BuildStabilityMetrics.FAILED, failed));
-    context.saveMeasure(new Measure(BuildStabilityMetrics.SUCCESS_RATE, divide(successful, count) * 100));
+  protected File getCacheDirectory() {
+    String cacheDir = settings.getString(CACHE_DIR_PROPERTY);
+    return StringUtils.isNotBlank(cacheDir) ? new File(cacheDir) : new File(fileSystem.workDir(), "build-stability");
+  }
 
-    context.saveMeasure(new Measure(BuildStabilityMetrics.AVG_DURATION, divide(duration, successful)));
-    context.saveMeasure(new Measure(BuildStabilityMetrics.LONGEST_DURATION, normalize(longest)));
-    context.saveMeasure(new Measure(BuildStabilityMetrics.SHORTEST_DURATION, normalize(shortest)));
+  /**
+   * Sessions hold credentials, so they are kept only in a directory given explicitly.
+   */
+  @CheckForNull
+  protected File getSessionDirectory() {
+    String cacheDir = settings.getString(CACHE_DIR_PROPERTY);
+    return StringUtils.isNotBlank(cacheDir) ? new File(cacheDir) : null;
+  }
+
+  protected void analyseBuilds(List<Build> builds, SensorContext context) {
+    analyseBuilds(BuildHistory.of(builds), context);
+  }
+
+  protected void analyseBuilds(BuildHistory builds, SensorContext context) {
+    builds.sortByNumber();
+
+    // Same data as the one of PropertiesBuilder: key=value pairs sorted by key, the last value of a key winning
+    StringBuilder durationsData = new StringBuilder();
+    StringBuilder resultsData = new StringBuilder();
+    BuildStatistics statistics = new BuildStatistics();
 
-    context.saveMeasure(new Measure(BuildStabilityMetrics.AVG_TIME_TO_FIX, divide(totalTimeToFix, fixes)));
-    context.saveMeasure(new Measure(BuildStabilityMetrics.LONGEST_TIME_TO_FIX, normalize(longestTimeToFix)));
-    context.saveMeasure(new Measure(BuildStabilityMetrics.AVG_BUILDS_TO_FIX, divide(totalBuildsToFix, fixes)));
+    boolean debug = LOG.isDebugEnabled();
+    int size = builds.size();
+    for (int i = 0; i < size; i++) {
+      int buildNumber = builds.getNumber(i);
+      boolean buildSuccessful = builds.isSuccessful(i);
+      double buildDuration = builds.getDuration(i);
+      if (debug) {
+        LOG.debug("Build {}: {} in {} ms", new Object[] {buildNumber, buildSuccessful ? "successful" : "failed", buildDuration});
+      }
+
+      if (i == size - 1 || builds.getNumber(i + 1) != buildNumber) {
+        String separator = durationsData.length() == 0 ? "" : ";";
+        durationsData.append(separator).append(buildNumber).append('=').append(buildDuration / 1000);
+        resultsData.append(separator).append(buildNumber).append('=').append(buildSuccessful ? 'g' : 'r');
+      }
+      statistics.add(buildNumber, builds.getTimestamp(i), buildDuration, buildSuccessful);
+    }
 
+    saveMeasures(statistics, context);
     if (!builds.isEmpty()) {
-      context.saveMeasure(durationsBuilder.build());
-      context.saveMeasure(resultsBuilder.build());
+      context.saveMeasure(new Measure(BuildStabilityMetrics.DURATIONS, durationsData.toString()));
+      context.saveMeasure(new Measure(BuildStabilityMetrics.RESULTS, resultsData.toString()));
     }
   }
 
-  private double normalize(double value) {
-    return Double.isInfinite(value) ? 0 : value;
-  }
+  private static void saveMeasures(BuildStatistics statistics, SensorContext context) {
+    context.saveMeasure(new Measure(BuildStabilityMetrics.BUILDS, (double) statistics.getCount()));
+    context.saveMeasure(new Measure(BuildStabilityMetrics.FAILED, (double) statistics.getFailed()));
+    context.saveMeasure(new Measure(BuildStabilityMetrics.SUCCESS_RATE, statistics.getSuccessRate()));
+
+    context.saveMeasure(new Measure(BuildStabilityMetrics.AVG_DURATION, statistics.getAverageDuration()));
+    context.saveMeasure(new Measure(BuildStabilityMetrics.LONGEST_DURATION, statistics.getLongestDuration()));
+    context.saveMeasure(new Measure(BuildStabilityMetrics.SHORTEST_DURATION, statistics.getShortestDuration()));
+    context.saveMeasure(new Measure(BuildStabilityMetrics.MEDIAN_DURATION, statistics.getDurationPercentile(50)));
+    context.saveMeasure(new Measure(BuildStabilityMetrics.P90_DURATION, statistics.getDurationPercentile(90)));
+    context.saveMeasure(new Measure(BuildStabilityMetrics.P95_DURATION, statistics.getDurationPercentile(95)));
+    context.saveMeasure(new Measure(BuildStabilityMetrics.P99_DURATION, statistics.getDurationPercentile(99)));
 
-  private double divide(double v1, double v2) {
-    return Double.doubleToRawLongBits(v2) == 0 ? 0 : v1 / v2;
+    context.saveMeasure(new Measure(BuildStabilityMetrics.AVG_TIME_TO_FIX, statistics.getAverageTimeToFix()));
+    context.saveMeasure(new Measure(BuildStabilityMetrics.LONGEST_TIME_TO_FIX, statistics.getLongestTimeToFix()));
+    context.saveMeasure(new Measure(BuildStabilityMetrics.AVG_BUILDS_TO_FIX, statistics.getAverageBuildsToFix()));
   }
 
   @Override
@@ -0,0 +1,251 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability;
+
+import org.sonar.plugins.buildstability.ci.api.BuildHistory;
+
+/**
+ * Values of the build stability measures, computed from builds given one at a time by ascending number, in constant
+ * memory. Statistics of consecutive ranges of builds, such as chunks retrieved concurrently or cached segments, are
+ * combined with {@link #merge(BuildStatistics)}.
+ * <p/>
+ * Durations are the ones of successful builds, of which percentiles are estimated by a {@link DurationHistogram}.
+ * A failure is fixed by the first successful build after it, and the time and number of builds to fix are counted
+ * from the first failed build.
+ */
+public final class BuildStatistics {
+  private int count;
+  private int failed;
+  private double totalDuration;
+  private double shortestDuration = Double.POSITIVE_INFINITY;
+  private double longestDuration = Double.NEGATIVE_INFINITY;
+  private final DurationHistogram durations = new DurationHistogram();
+
+  private int fixes;
+  private double totalTimeToFix;
+  private double totalBuildsToFix;
+  private double longestTimeToFix = Double.NEGATIVE_INFINITY;
+  /**
+   * Longest time to fix, but for the fix of the failures the builds begin with, which is replaced when the builds
+   * follow unfixed failures.
+   */
+  private double longestInnerTimeToFix = Double.NEGATIVE_INFINITY;
+
+  // Boundaries, needed to merge fixes across ranges of builds
+  private int firstNumber;
+  private long firstTimestamp;
+  private boolean firstFailed;
+  private boolean successful;
+  private int firstSuccessfulNumber;
+  private long firstSuccessfulTimestamp;
+  private boolean unfixed;
+  private int unfixedNumber;
+  private long unfixedTimestamp;
+  private boolean unfixedLeading;
+
+  public static BuildStatistics of(BuildHistory builds) {
+    BuildStatistics statistics = new BuildStatistics();
+    for (int i = 0; i < builds.size(); i++) {
+      statistics.add(builds.getNumber(i), builds.getTimestamp(i), builds.getDuration(i), builds.isSuccessful(i));
+    }
+    return statistics;
+  }
+
+  /**
+   * @param number greater than or equal to the numbers of the builds added before
+   */
+  public void add(int number, long timestamp, double duration, boolean buildSuccessful) {
+    if (count == 0) {
+      firstNumber = number;
+      firstTimestamp = timestamp;
+      firstFailed = !buildSuccessful;
+    }
+    count++;
+    if (buildSuccessful) {
+      totalDuration += duration;
+      shortestDuration = Math.min(shortestDuration, duration);
+      longestDuration = Math.max(longestDuration, duration);
+      durations.add(duration);
+      if (!successful) {
+        successful = true;
+        firstSuccessfulNumber = number;
+        firstSuccessfulTimestamp = timestamp;
+      }
+      if (unfixed) {
+        // Build fixed
+        addFix(((long) number) - unfixedNumber, timestamp - unfixedTimestamp, unfixedLeading);
+        unfixed = false;
+      }
+    } else {
+      failed++;
+      if (!unfixed) {
+        // Build failed
+        unfixed = true;
+        unfixedNumber = number;
+        unfixedTimestamp = timestamp;
+        unfixedLeading = count == 1;
+      }
+    }
+  }
+
+  private void addFix(double buildsToFix, double timeToFix, boolean leading) {
+    fixes++;
+    totalBuildsToFix += buildsToFix;
+    totalTimeToFix += timeToFix;
+    longestTimeToFix = Math.max(longestTimeToFix, timeToFix);
+    if (!leading) {
+      longestInnerTimeToFix = Math.max(longestInnerTimeToFix, timeToFix);
+    }
+  }
+
+  /**
+   * Adds the statistics of the builds following the ones of this instance, as if they were added one by one.
+   *
+   * @return this instance
+   */
+  public BuildStatistics merge(BuildStatistics next) {
+    if (next.count == 0) {
+      return this;
+    }
+    if (count == 0) {
+      copy(next);
+      return this;
+    }
+    count += next.count;
+    failed += next.failed;
+    totalDuration += next.totalDuration;
+    shortestDuration = Math.min(shortestDuration, next.shortestDuration);
+    longestDuration = Math.max(longestDuration, next.longestDuration);
+    durations.merge(next.durations);
+
+    fixes += next.fixes;
+    totalBuildsToFix += next.totalBuildsToFix;
+    totalTimeToFix += next.totalTimeToFix;
+    longestInnerTimeToFix = Math.max(longestInnerTimeToFix, next.longestInnerTimeToFix);
+    longestTimeToFix = Math.max(longestTimeToFix, next.longestInnerTimeToFix);
+    if (next.firstFailed && next.successful) {
+      double buildsToFix = ((long) next.firstSuccessfulNumber) - next.firstNumber;
+      double timeToFix = next.firstSuccessfulTimestamp - next.firstTimestamp;
+      if (unfixed) {
+        // The failures the next builds begin with were fixed from earlier
+        fixes--;
+        totalBuildsToFix -= buildsToFix;
+        totalTimeToFix -= timeToFix;
+      } else {
+        longestInnerTimeToFix = Math.max(longestInnerTimeToFix, timeToFix);
+        longestTimeToFix = Math.max(longestTimeToFix, timeToFix);
+      }
+    }
+    if (unfixed && next.successful) {
+      addFix(((long) next.firstSuccessfulNumber) - unfixedNumber, next.firstSuccessfulTimestamp - unfixedTimestamp, unfixedLeading);
+      unfixed = false;
+    }
+    if (!unfixed && next.unfixed) {
+      unfixed = true;
+      unfixedNumber = next.unfixedNumber;
+      unfixedTimestamp = next.unfixedTimestamp;
+      unfixedLeading = false;
+    }
+    if (!successful && next.successful) {
+      successful = true;
+      firstSuccessfulNumber = next.firstSuccessfulNumber;
+      firstSuccessfulTimestamp = next.firstSuccessfulTimestamp;
+    }
+    return this;
+  }
+
+  private void copy(BuildStatistics other) {
+    count = other.count;
+    failed = other.failed;
+    totalDuration = other.totalDuration;
+    shortestDuration = other.shortestDuration;
+    longestDuration = other.longestDuration;
+    durations.merge(other.durations);
+    fixes = other.fixes;
+    totalTimeToFix = other.totalTimeToFix;
+    totalBuildsToFix = other.totalBuildsToFix;
+    longestTimeToFix = other.longestTimeToFix;
+    longestInnerTimeToFix = other.longestInnerTimeToFix;
+    firstNumber = other.firstNumber;
+    firstTimestamp = other.firstTimestamp;
+    firstFailed = other.firstFailed;
+    successful = other.successful;
+    firstSuccessfulNumber = other.firstSuccessfulNumber;
+    firstSuccessfulTimestamp = other.firstSuccessfulTimestamp;
+    unfixed = other.unfixed;
+    unfixedNumber = other.unfixedNumber;
+    unfixedTimestamp = other.unfixedTimestamp;
+    unfixedLeading = other.unfixedLeading;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public int getFailed() {
+    return failed;
+  }
+
+  /**
+   * Percentage of successful builds.
+   */
+  public double getSuccessRate() {
+    return divide(count - failed, count) * 100;
+  }
+
+  public double getAverageDuration() {
+    return divide(totalDuration, count - failed);
+  }
+
+  public double getShortestDuration() {
+    return normalize(shortestDuration);
+  }
+
+  public double getLongestDuration() {
+    return normalize(longestDuration);
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   */
+  public double getDurationPercentile(double percentile) {
+    return durations.getPercentile(percentile);
+  }
+
+  public double getAverageTimeToFix() {
+    return divide(totalTimeToFix, fixes);
+  }
+
+  public double getLongestTimeToFix() {
+    return normalize(longestTimeToFix);
+  }
+
+  public double getAverageBuildsToFix() {
+    return divide(totalBuildsToFix, fixes);
+  }
+
+  private static double normalize(double value) {
+    return Double.isInfinite(value) ? 0 : value;
+  }
+
+  private static double divide(double v1, double v2) {
+    return Double.doubleToRawLongBits(v2) == 0 ? 0 : v1 / v2;
+  }
+}
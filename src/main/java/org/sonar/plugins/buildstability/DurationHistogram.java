@@ -0,0 +1,101 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability;
+
+/**
+ * Histogram of durations, in milliseconds, with buckets growing exponentially like the ones of HdrHistogram, so that
+ * percentiles of any number of durations are known within 0.4% in fixed memory. Durations below 256 milliseconds
+ * have a bucket each, and each following power of two is divided into 128 buckets. Histograms of different builds are
+ * combined with {@link #merge(DurationHistogram)}.
+ */
+public final class DurationHistogram {
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  /**
+   * Durations below this one are counted exactly.
+   */
+  private static final int EXACT = SUB_BUCKETS << 1;
+  private static final int BUCKETS = EXACT + (Integer.SIZE - 2 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final int[] counts = new int[BUCKETS];
+  private int count;
+
+  /**
+   * Negative durations are counted as 0, and durations greater than {@link Integer#MAX_VALUE} as this one.
+   */
+  public void add(double duration) {
+    int value = (int) Math.max(0, Math.min(Integer.MAX_VALUE, Math.round(duration)));
+    counts[bucket(value)]++;
+    count++;
+  }
+
+  public DurationHistogram merge(DurationHistogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] += other.counts[i];
+    }
+    count += other.count;
+    return this;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Duration which the given percentage of durations do not exceed, by the nearest-rank method, <code>0</code> when
+   * there is no duration.
+   *
+   * @param percentile between 0 and 100
+   */
+  public double getPercentile(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return value(i);
+      }
+    }
+    return value(BUCKETS - 1);
+  }
+
+  static int bucket(int value) {
+    if (value < EXACT) {
+      return value;
+    }
+    int shift = Integer.SIZE - Integer.numberOfLeadingZeros(value) - 1 - SUB_BUCKET_BITS;
+    return EXACT + (shift - 1) * SUB_BUCKETS + (value >> shift) - SUB_BUCKETS;
+  }
+
+  /**
+   * Middle of the durations of the bucket.
+   */
+  static double value(int bucket) {
+    if (bucket < EXACT) {
+      return bucket;
+    }
+    int shift = (bucket - EXACT) / SUB_BUCKETS + 1;
+    long lowest = ((long) ((bucket - EXACT) % SUB_BUCKETS + SUB_BUCKETS)) << shift;
+    return lowest + ((1L << shift) - 1) / 2.0;
+  }
+}
@@ -0,0 +1,347 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.plugins.buildstability.ci.api.Build;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finished builds of a CI job, persisted between analyses, as such builds never change.
+ * Build numbers found missing on the server are only kept during an analysis, so that they are not requested again
+ * by the same analysis: they are not persisted, as the server may deny access to a build or fail temporarily.
+ * When the cache grows beyond its maximum size, the oldest build numbers are evicted.
+ * <p/>
+ * The cache also records up to which build number it is in sync with the server, and since which date,
+ * so that an incremental analysis only needs to retrieve newer builds.
+ * <p/>
+ * For the URLs of resources which change, such as the last build, the validators sent by the server are kept with the
+ * build, so that it is requested again only if modified.
+ */
+public class BuildCache {
+  private static final Logger LOG = LoggerFactory.getLogger(BuildCache.class);
+
+  private static final int VERSION = 3;
+  private static final int MISSING = 1;
+  private static final int SUCCESSFUL = 1 << 1;
+  private static final int HAS_RESULT = 1 << 2;
+  private static final int BUILDING = 1 << 3;
+  private static final int HAS_ETAG = 1;
+  private static final int HAS_LAST_MODIFIED = 1 << 1;
+
+  private final File file;
+  private final int maxSize;
+  private final TreeMap<Integer, Build> builds = new TreeMap<Integer, Build>();
+  private final Map<String, Response> responses = new HashMap<String, Response>();
+  private long syncedSince;
+  private int syncedNumber;
+
+  BuildCache(File file, int maxSize) {
+    this.file = file;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Loads the cache of the given CI job, starting with an empty cache if it can not be read.
+   */
+  public static BuildCache load(File directory, String ciUrl, int maxSize) {
+    BuildCache cache = new BuildCache(new File(directory, DigestUtils.md5Hex(ciUrl) + ".bin"), maxSize);
+    if (cache.file.isFile()) {
+      try {
+        cache.read();
+      } catch (IOException e) {
+        LOG.warn("Unable to read build cache {}, it will be rebuilt", cache.file);
+        cache.builds.clear();
+        cache.responses.clear();
+        cache.resetSynced();
+      }
+    }
+    return cache;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public synchronized int size() {
+    return builds.size();
+  }
+
+  public synchronized boolean contains(int number) {
+    return builds.containsKey(number);
+  }
+
+  /**
+   * @return <code>null</code> if the build is missing on the server or not cached
+   */
+  @CheckForNull
+  public synchronized Build get(int number) {
+    return builds.get(number);
+  }
+
+  /**
+   * Builds which are not finished are ignored.
+   */
+  public synchronized void put(Build build) {
+    if (!build.isBuilding()) {
+      builds.put(build.getNumber(), build);
+    }
+  }
+
+  /**
+   * Missing build numbers are not saved, so that they are requested again by the next analysis.
+   */
+  public synchronized void putMissing(int number) {
+    builds.put(number, null);
+  }
+
+  /**
+   * @return <code>null</code> if no validated build is known for this URL
+   */
+  @CheckForNull
+  public synchronized Response getResponse(String url) {
+    return responses.get(url);
+  }
+
+  /**
+   * Keeps the build returned for the given URL, if the server sent a validator for it.
+   */
+  public synchronized void putResponse(String url, @Nullable String etag, @Nullable String lastModified, Build build) {
+    if (etag == null && lastModified == null) {
+      responses.remove(url);
+    } else {
+      responses.put(url, new Response(etag, lastModified, build));
+    }
+  }
+
+  public synchronized int getSyncedNumber() {
+    return syncedNumber;
+  }
+
+  /**
+   * @return <code>true</code> if all the finished builds more recent than the date, up to {@link #getSyncedNumber()}, are cached
+   */
+  public synchronized boolean isSyncedSince(Date date) {
+    return syncedNumber > 0 && syncedSince <= date.getTime();
+  }
+
+  /**
+   * Records that all the builds more recent than the date, up to the given number included, are cached.
+   */
+  public synchronized void setSynced(Date since, int number) {
+    syncedSince = since.getTime();
+    syncedNumber = number;
+  }
+
+  /**
+   * @return cached builds up to the given number included, most recent first
+   */
+  public synchronized List<Build> getBuilds(int toNumber) {
+    List<Build> result = new ArrayList<Build>();
+    for (Build build : builds.headMap(toNumber, true).descendingMap().values()) {
+      if (build != null) {
+        result.add(build);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Drops builds older than the date, as well as missing build numbers below the oldest remaining build.
+   */
+  public synchronized void evictBefore(Date date) {
+    Iterator<Build> it = builds.values().iterator();
+    while (it.hasNext()) {
+      Build build = it.next();
+      if (build != null && build.getTimestamp() > date.getTime()) {
+        break;
+      }
+      it.remove();
+    }
+    syncedSince = Math.max(syncedSince, date.getTime());
+  }
+
+  public synchronized void save() throws IOException {
+    while (builds.size() > maxSize) {
+      Build evicted = builds.pollFirstEntry().getValue();
+      if (evicted != null && evicted.getTimestamp() > syncedSince) {
+        // Builds of the synced period are no longer all cached
+        resetSynced();
+      }
+    }
+    FileUtils.forceMkdir(file.getParentFile());
+    File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+    try {
+      write(out);
+    } finally {
+      IOUtils.closeQuietly(out);
+    }
+    FileUtils.deleteQuietly(file);
+    if (!tmp.renameTo(file)) {
+      throw new IOException("Unable to write build cache " + file);
+    }
+  }
+
+  private void resetSynced() {
+    syncedSince = 0;
+    syncedNumber = 0;
+  }
+
+  private void write(DataOutputStream out) throws IOException {
+    out.writeInt(VERSION);
+    out.writeLong(syncedSince);
+    out.writeInt(syncedNumber);
+    List<Build> finished = new ArrayList<Build>();
+    for (Build build : builds.values()) {
+      if (build != null) {
+        finished.add(build);
+      }
+    }
+    out.writeInt(finished.size());
+    for (Build build : finished) {
+      out.writeInt(build.getNumber());
+      writeBuild(out, build);
+    }
+    out.writeInt(responses.size());
+    for (Map.Entry<String, Response> entry : responses.entrySet()) {
+      Response response = entry.getValue();
+      out.writeUTF(entry.getKey());
+      out.writeByte((response.etag != null ? HAS_ETAG : 0) | (response.lastModified != null ? HAS_LAST_MODIFIED : 0));
+      if (response.etag != null) {
+        out.writeUTF(response.etag);
+      }
+      if (response.lastModified != null) {
+        out.writeUTF(response.lastModified);
+      }
+      out.writeInt(response.build.getNumber());
+      writeBuild(out, response.build);
+    }
+  }
+
+  private static void writeBuild(DataOutputStream out, Build build) throws IOException {
+    int flags = (build.isSuccessful() ? SUCCESSFUL : 0) | (build.getResult() != null ? HAS_RESULT : 0) | (build.isBuilding() ? BUILDING : 0);
+    out.writeByte(flags);
+    out.writeLong(build.getTimestamp());
+    out.writeDouble(build.getDuration());
+    if (build.getResult() != null) {
+      out.writeUTF(build.getResult());
+    }
+  }
+
+  private void read() throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (in.readInt() != VERSION) {
+        LOG.info("Build cache {} has an older format, it will be rebuilt", file);
+        return;
+      }
+      syncedSince = in.readLong();
+      syncedNumber = in.readInt();
+      int size = in.readInt();
+      for (int i = 0; i < size; i++) {
+        int number = in.readInt();
+        Build build = readBuild(in, number);
+        // Missing build numbers saved by older versions are requested again
+        if (build != null) {
+          builds.put(number, build);
+        }
+      }
+      size = in.readInt();
+      for (int i = 0; i < size; i++) {
+        String url = in.readUTF();
+        int flags = in.readByte();
+        String etag = (flags & HAS_ETAG) != 0 ? in.readUTF() : null;
+        String lastModified = (flags & HAS_LAST_MODIFIED) != 0 ? in.readUTF() : null;
+        Build build = readBuild(in, in.readInt());
+        if (build != null) {
+          responses.put(url, new Response(etag, lastModified, build));
+        }
+      }
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+  }
+
+  @CheckForNull
+  private static Build readBuild(DataInputStream in, int number) throws IOException {
+    int flags = in.readByte();
+    if ((flags & MISSING) != 0) {
+      return null;
+    }
+    long timestamp = in.readLong();
+    double duration = in.readDouble();
+    String result = (flags & HAS_RESULT) != 0 ? in.readUTF() : null;
+    Build build = new Build(number, timestamp, result, (flags & SUCCESSFUL) != 0, duration);
+    build.setBuilding((flags & BUILDING) != 0);
+    return build;
+  }
+
+  /**
+   * Build returned for a URL, with the validators sent by the server.
+   */
+  public static final class Response {
+    private final String etag;
+    private final String lastModified;
+    private final Build build;
+
+    Response(@Nullable String etag, @Nullable String lastModified, Build build) {
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.build = build;
+    }
+
+    @CheckForNull
+    public String getEtag() {
+      return etag;
+    }
+
+    @CheckForNull
+    public String getLastModified() {
+      return lastModified;
+    }
+
+    public Build getBuild() {
+      return build;
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci;
+
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the bytes read from response entities, in an {@link AtomicLong} stored in the context under the given attribute.
+ * Registered before and after the decompression of responses, it tells how many bytes went through the network and
+ * how many were parsed.
+ */
+class ByteCountingInterceptor implements HttpResponseInterceptor {
+  static final String WIRE_BYTES = "build-stability.wire-bytes";
+  static final String CONTENT_BYTES = "build-stability.content-bytes";
+
+  private final String attribute;
+
+  ByteCountingInterceptor(String attribute) {
+    this.attribute = attribute;
+  }
+
+  @Override
+  public void process(HttpResponse response, HttpContext context) {
+    HttpEntity entity = response.getEntity();
+    if (entity != null) {
+      AtomicLong counter = new AtomicLong();
+      context.setAttribute(attribute, counter);
+      response.setEntity(new CountingEntity(entity, counter));
+    }
+  }
+
+  static long getCount(HttpContext context, String attribute) {
+    AtomicLong counter = (AtomicLong) context.getAttribute(attribute);
+    return counter == null ? 0 : counter.get();
+  }
+
+  private static class CountingEntity extends HttpEntityWrapper {
+    private final AtomicLong counter;
+
+    CountingEntity(HttpEntity entity, AtomicLong counter) {
+      super(entity);
+      this.counter = counter;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+      return new ProxyInputStream(super.getContent()) {
+        @Override
+        protected void afterRead(int n) {
+          if (n > 0) {
+            counter.addAndGet(n);
+          }
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.config.Settings;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Connections to CI servers, kept alive and shared by all the {@link CiConnector connectors} of a batch run.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class CiConnectionPool implements BatchExtension {
+  public static final String MAX_CONNECTIONS_PROPERTY = "sonar.build-stability.max_connections";
+  public static final int MAX_CONNECTIONS_DEFAULT_VALUE = 20;
+  public static final String MAX_CONNECTIONS_PER_ROUTE_PROPERTY = "sonar.build-stability.max_connections_per_route";
+  public static final int MAX_CONNECTIONS_PER_ROUTE_DEFAULT_VALUE = 5;
+  public static final String CONNECT_TIMEOUT_PROPERTY = "sonar.build-stability.connect_timeout";
+  public static final int CONNECT_TIMEOUT_DEFAULT_VALUE = 10 * 1000;
+  public static final String SOCKET_TIMEOUT_PROPERTY = "sonar.build-stability.socket_timeout";
+  public static final int SOCKET_TIMEOUT_DEFAULT_VALUE = 30 * 1000;
+
+  /**
+   * How long an idle connection is kept, when the server does not tell it with a <code>Keep-Alive</code> header.
+   */
+  private static final long KEEP_ALIVE = 30 * 1000L;
+  /**
+   * Number of consecutive failures after which requests to a server fail at once, and for how long.
+   */
+  private static final int CIRCUIT_BREAKER_FAILURES = 5;
+  private static final long CIRCUIT_BREAKER_DELAY = 30 * 1000L;
+
+  private final PoolingClientConnectionManager connectionManager;
+  private final int connectTimeout;
+  private final int socketTimeout;
+  private final ConcurrentMap<String, RequestThrottle> throttles = new ConcurrentHashMap<String, RequestThrottle>();
+  private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<String, CircuitBreaker>();
+
+  public CiConnectionPool(Settings settings) {
+    connectionManager = new PoolingClientConnectionManager();
+    connectionManager.setMaxTotal(getInt(settings, MAX_CONNECTIONS_PROPERTY, MAX_CONNECTIONS_DEFAULT_VALUE));
+    connectionManager.setDefaultMaxPerRoute(getInt(settings, MAX_CONNECTIONS_PER_ROUTE_PROPERTY, MAX_CONNECTIONS_PER_ROUTE_DEFAULT_VALUE));
+    connectTimeout = getInt(settings, CONNECT_TIMEOUT_PROPERTY, CONNECT_TIMEOUT_DEFAULT_VALUE);
+    socketTimeout = getInt(settings, SOCKET_TIMEOUT_PROPERTY, SOCKET_TIMEOUT_DEFAULT_VALUE);
+  }
+
+  private static int getInt(Settings settings, String key, int defaultValue) {
+    return settings.hasKey(key) ? settings.getInt(key) : defaultValue;
+  }
+
+  PoolingClientConnectionManager getConnectionManager() {
+    return connectionManager;
+  }
+
+  public int getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  public int getSocketTimeout() {
+    return socketTimeout;
+  }
+
+  /**
+   * Each client has its own credentials and cookies, but takes its connections from the pool.
+   * Waiting for a connection, when all the connections to a server are in use, is bounded by the socket timeout.
+   * Compressed responses are asked for, and transparently decompressed.
+   */
+  public DefaultHttpClient createClient() {
+    DefaultHttpClient client = new DefaultHttpClient(connectionManager);
+    HttpParams params = client.getParams();
+    HttpConnectionParams.setConnectionTimeout(params, connectTimeout);
+    HttpConnectionParams.setSoTimeout(params, socketTimeout);
+    HttpConnectionParams.setStaleCheckingEnabled(params, true);
+    HttpClientParams.setConnectionManagerTimeout(params, socketTimeout);
+    client.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+      @Override
+      public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+        long duration = super.getKeepAliveDuration(response, context);
+        return duration > 0 ? duration : KEEP_ALIVE;
+      }
+    });
+    // Requests are retried by the connectors, with backoff and within the deadline
+    client.setHttpRequestRetryHandler(new DefaultHttpRequestRetryHandler(0, false));
+    client.addRequestInterceptor(new RequestAcceptEncoding());
+    client.addResponseInterceptor(new ByteCountingInterceptor(ByteCountingInterceptor.WIRE_BYTES));
+    client.addResponseInterceptor(new ResponseContentEncoding());
+    client.addResponseInterceptor(new ByteCountingInterceptor(ByteCountingInterceptor.CONTENT_BYTES));
+    return client;
+  }
+
+  /**
+   * Throttle shared by the connectors of a CI server with the same settings, while connectors with other settings get
+   * their own. The number of concurrent requests is bounded by the maximum number of connections per route.
+   */
+  public RequestThrottle getThrottle(String host, double requestsPerSecond, boolean adaptive) {
+    String key = host + " " + requestsPerSecond + " " + adaptive;
+    RequestThrottle throttle = throttles.get(key);
+    if (throttle == null) {
+      throttles.putIfAbsent(key, new RequestThrottle(requestsPerSecond, connectionManager.getDefaultMaxPerRoute(), adaptive));
+      throttle = throttles.get(key);
+    }
+    return throttle;
+  }
+
+  /**
+   * Circuit breaker shared by the connectors of a CI server.
+   */
+  public CircuitBreaker getCircuitBreaker(String host) {
+    CircuitBreaker circuitBreaker = circuitBreakers.get(host);
+    if (circuitBreaker == null) {
+      circuitBreakers.putIfAbsent(host, new CircuitBreaker(CIRCUIT_BREAKER_FAILURES, CIRCUIT_BREAKER_DELAY));
+      circuitBreaker = circuitBreakers.get(host);
+    }
+    return circuitBreaker;
+  }
+
+  public void stop() {
+    connectionManager.shutdown();
+  }
+}
@@ -20,11 +20,30 @@
 package org.sonar.plugins.buildstability.ci;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.auth.AuthProtocolState;
+import org.apache.http.auth.AuthState;
+import org.apache.http.client.AuthCache;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.BasicAuthCache;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
@@ -33,11 +52,31 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.plugins.buildstability.ci.api.AbstractServer;
 import org.sonar.plugins.buildstability.ci.api.Build;
+import org.sonar.plugins.buildstability.ci.api.BuildHistory;
+import org.sonar.plugins.buildstability.ci.api.JsonUnmarshaller;
+import org.sonar.plugins.buildstability.ci.api.Model;
 
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLStreamException;
+
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -46,41 +85,266 @@ import java.util.regex.Pattern;
  */
 public class CiConnector {
 
+  public static final int DEFAULT_MAX_RETRIES = 2;
+
   private static final Logger LOG = LoggerFactory.getLogger(CiConnector.class);
-  private static final int TIMEOUT = 30 * 1000;
+  private static final int PAGE_SIZE = 100;
+  /**
+   * Longest run of missing build numbers taken as a gap between builds, rather than as discarded builds.
+   */
+  private static final int MAX_GAP = 16;
+  private static final long DEFAULT_RETRY_BACKOFF = 500;
+  private static final long MAX_RETRY_DELAY = 30 * 1000L;
+  /**
+   * Backoff doubles at most this number of times, so that it does not overflow.
+   */
+  private static final int MAX_BACKOFF_SHIFT = 30;
+  private static final int TOO_MANY_REQUESTS = 429;
+  private static final int PROLOG_MAX_LENGTH = 256;
+  private static final Pattern PROLOG_ENCODING = Pattern.compile("^<\\?xml[^>]*encoding=[\"']([^\"']*)[\"']");
+  private static final Pattern CHARSET = Pattern.compile("charset=([^;]*)");
+  private static final String JSON_CONTENT_TYPE = "application/json";
+  private static final String THROTTLED_REQUEST = "build-stability.throttled-request";
 
   private DefaultHttpClient client;
   private AbstractServer server;
+  private final CiConnectionPool connectionPool;
+  private int fetchThreads = 1;
+  private boolean virtualThreads = true;
+  private RequestThrottle throttle;
+  private int maxRetries = DEFAULT_MAX_RETRIES;
+  private long retryBackoff = DEFAULT_RETRY_BACKOFF;
+  private volatile boolean complete = true;
+  private long deadline;
+  private volatile boolean deadlineExceeded;
+  private BuildCache buildCache;
+  private boolean incremental;
+  private final AtomicLong wireBytes = new AtomicLong();
+  private final AtomicLong contentBytes = new AtomicLong();
+  private final AtomicInteger savedChallenges = new AtomicInteger();
 
-  protected CiConnector(AbstractServer server) {
+  protected CiConnector(AbstractServer server, CiConnectionPool connectionPool) {
     this.server = server;
-    client = new DefaultHttpClient();
-    HttpConnectionParams.setSoTimeout(client.getParams(), TIMEOUT);
+    this.connectionPool = connectionPool;
+    client = connectionPool.createClient();
   }
 
-  @VisibleForTesting
-  AbstractServer getServer() {
+  public int getFetchThreads() {
+    return fetchThreads;
+  }
+
+  /**
+   * Number of builds retrieved concurrently, when the server is not able to list builds.
+   * Requests beyond the maximum number of connections per route of the {@link CiConnectionPool} wait for a connection.
+   */
+  public void setFetchThreads(int fetchThreads) {
+    this.fetchThreads = Math.max(1, fetchThreads);
+  }
+
+  @CheckForNull
+  public RequestThrottle getThrottle() {
+    return throttle;
+  }
+
+  /**
+   * Requests wait for this throttle, if any, before being sent.
+   */
+  public void setThrottle(@Nullable RequestThrottle throttle) {
+    this.throttle = throttle;
+  }
+
+  public int getMaxRetries() {
+    return maxRetries;
+  }
+
+  /**
+   * Number of times a request is sent again, after a network error or a status telling that the server is
+   * temporarily unavailable.
+   */
+  public void setMaxRetries(int maxRetries) {
+    this.maxRetries = Math.max(0, maxRetries);
+  }
+
+  /**
+   * Base delay before a retry, in milliseconds, doubled at each retry.
+   */
+  public void setRetryBackoff(long retryBackoff) {
+    this.retryBackoff = Math.max(1, retryBackoff);
+  }
+
+  public long getDeadline() {
+    return deadline;
+  }
+
+  /**
+   * Time, in milliseconds since the epoch, after which no request is sent, <code>0</code> for no deadline.
+   * Timeouts of requests are bounded by the remaining time.
+   */
+  public void setDeadline(long deadline) {
+    this.deadline = deadline;
+  }
+
+  /**
+   * @return <code>true</code> if a request was not sent because the deadline was passed
+   */
+  public boolean isDeadlineExceeded() {
+    return deadlineExceeded;
+  }
+
+  /**
+   * @return <code>false</code> if the last retrieval of builds since a date was interrupted by errors, or by the deadline
+   */
+  public boolean isComplete() {
+    return complete;
+  }
+
+  public boolean isVirtualThreads() {
+    return virtualThreads;
+  }
+
+  /**
+   * When enabled, and supported by the runtime, builds retrieved concurrently each get a virtual thread rather than
+   * a thread of a pool, still no more than {@link #getFetchThreads()} at a time.
+   */
+  public void setVirtualThreads(boolean virtualThreads) {
+    this.virtualThreads = virtualThreads;
+  }
+
+  public AbstractServer getServer() {
     return server;
   }
 
+  @CheckForNull
+  public BuildCache getBuildCache() {
+    return buildCache;
+  }
+
+  /**
+   * Finished builds are taken from this cache rather than requested from the server.
+   */
+  public void setBuildCache(@Nullable BuildCache buildCache) {
+    this.buildCache = buildCache;
+  }
+
+  public boolean isIncremental() {
+    return incremental;
+  }
+
+  /**
+   * When enabled, and a {@link BuildCache} is set, only builds newer than the ones of the previous analysis are retrieved.
+   */
+  public void setIncremental(boolean incremental) {
+    this.incremental = incremental;
+  }
+
+  /**
+   * When a {@link BuildCache} is set, the last build is requested on condition that it was modified since the previous
+   * analysis, if the server sent validators for it.
+   */
   protected Build getLastBuild() throws IOException {
-    Document dom = executeGet(server.getLastBuildUrl());
-    if (dom == null) {
-      return null;
+    boolean json = server.isUseJson();
+    try {
+      return getLastBuild(server.getLastBuildUrl());
+    } catch (JsonSyntaxException e) {
+      fallbackToXml(json, e);
+      return getLastBuild(server.getLastBuildUrl());
     }
-    return server.getBuildUnmarshaller().toModel(dom.getRootElement());
+  }
+
+  private Build getLastBuild(String url) throws IOException {
+    BuildCache.Response cached = buildCache != null ? buildCache.getResponse(url) : null;
+    HttpGet httpGet = newGet(url);
+    if (cached != null) {
+      if (cached.getEtag() != null) {
+        httpGet.setHeader(HttpHeaders.IF_NONE_MATCH, cached.getEtag());
+      }
+      if (cached.getLastModified() != null) {
+        httpGet.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
+      }
+    }
+    HttpContext context = newContext(httpGet);
+    try {
+      HttpResponse httpResponse = send(httpGet, context);
+      if (cached != null && httpResponse.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+        LOG.debug("Last build not modified since previous analysis: {}", url);
+        return cached.getBuild();
+      }
+      Build build = readBuild(httpGet, httpResponse);
+      if (build != null && buildCache != null) {
+        buildCache.put(build);
+        buildCache.putResponse(url, getHeader(httpResponse, HttpHeaders.ETAG), getHeader(httpResponse, HttpHeaders.LAST_MODIFIED), build);
+      }
+      return build;
+    } finally {
+      httpGet.releaseConnection();
+      releaseThrottle(context);
+      countBytes(httpGet, context);
+    }
+  }
+
+  @CheckForNull
+  private static String getHeader(HttpResponse httpResponse, String name) {
+    Header header = httpResponse.getLastHeader(name);
+    return header != null ? header.getValue() : null;
   }
 
   protected Build getBuild(String number) throws IOException {
-    Document dom = executeGet(server.getBuildUrl(number));
-    if (dom == null) {
-      return null;
+    boolean json = server.isUseJson();
+    try {
+      return executeGet(server.getBuildUrl(number));
+    } catch (JsonSyntaxException e) {
+      fallbackToXml(json, e);
+      return getBuild(number);
     }
-    return server.getBuildUnmarshaller().toModel(dom.getRootElement());
   }
 
   protected Build getBuild(int number) throws IOException {
-    return getBuild(String.valueOf(number));
+    if (buildCache == null) {
+      return getBuild(String.valueOf(number));
+    }
+    if (buildCache.contains(number)) {
+      return buildCache.get(number);
+    }
+    Build build = getBuild(String.valueOf(number));
+    if (build == null) {
+      buildCache.putMissing(number);
+    } else {
+      buildCache.put(build);
+    }
+    return build;
+  }
+
+  /**
+   * @return <code>null</code> if the server is not able to list builds
+   */
+  @CheckForNull
+  protected List<Build> getBuildsPage(Date since, int start, int count) throws IOException {
+    String url = server.getBuildsUrl(since, start, count);
+    if (url == null) {
+      return null;
+    }
+    final List<Build> builds = new ArrayList<Build>();
+    StreamingUnmarshaller<Build> unmarshaller = new StreamingUnmarshaller<Build>(server.getBuildsElementName(), server.getBuildUnmarshaller());
+    JsonUnmarshaller<Build> buildJsonUnmarshaller = server.getBuildJsonUnmarshaller();
+    JsonStreamingUnmarshaller<Build> jsonUnmarshaller = buildJsonUnmarshaller != null
+      ? new JsonStreamingUnmarshaller<Build>(server.getBuildsArrayName(), buildJsonUnmarshaller) : null;
+    boolean json = server.isUseJson();
+    boolean found;
+    try {
+      found = executeGet(url, unmarshaller, jsonUnmarshaller, new StreamingUnmarshaller.Handler<Build>() {
+        @Override
+        public void handle(Build build) {
+          builds.add(build);
+          if (buildCache != null) {
+            buildCache.put(build);
+          }
+        }
+      });
+    } catch (JsonSyntaxException e) {
+      fallbackToXml(json, e);
+      return getBuildsPage(since, start, count);
+    }
+    return found ? builds : null;
   }
 
   public List<Build> getBuilds(int count) throws IOException {
@@ -99,64 +363,700 @@ public class CiConnector {
     return builds;
   }
 
+  /**
+   * When retrieval fails after some builds are retrieved, the most recent builds are returned, and
+   * {@link #isComplete()} tells that older ones are missing.
+   */
   public List<Build> getBuildsSince(Date date) throws IOException {
     server.doLogin(client);
+    complete = true;
+    deadlineExceeded = false;
+    try {
+      if (incremental && buildCache != null && buildCache.isSyncedSince(date)) {
+        return syncBuildsSince(date);
+      }
+      List<Build> builds = retrieveBuildsSince(date, 0);
+      if (buildCache != null && complete) {
+        buildCache.setSynced(date, getSyncedNumber(builds, 0));
+      }
+      return builds;
+    } finally {
+      saveBuildCache();
+      LOG.debug("Received {} bytes from {}, {} bytes once decompressed", new Object[] {wireBytes.get(), server.getHost(), contentBytes.get()});
+      LOG.debug("Saved {} authentication challenges from {}", savedChallenges.get(), server.getHost());
+    }
+  }
+
+  /**
+   * Same as {@link #getBuildsSince(Date)}, with builds stored in a {@link BuildHistory}, so that they are kept without
+   * the {@link Build} objects which are needed while retrieving them.
+   */
+  public BuildHistory getBuildHistorySince(Date date) throws IOException {
+    return BuildHistory.of(getBuildsSince(date));
+  }
+
+  /**
+   * Only builds newer than the ones of the previous analysis are retrieved, older ones are taken from the cache,
+   * from which builds out of the period are dropped.
+   */
+  private List<Build> syncBuildsSince(Date date) throws IOException {
+    int synced = buildCache.getSyncedNumber();
+    List<Build> builds = retrieveBuildsSince(date, synced);
+    LOG.info("Retrieved {} builds newer than build {}", builds.size(), synced);
+    buildCache.evictBefore(date);
+    builds.addAll(buildCache.getBuilds(synced));
+    if (complete) {
+      buildCache.setSynced(date, getSyncedNumber(builds, synced));
+    }
+    return builds;
+  }
+
+  /**
+   * Highest build number below which all builds are finished.
+   */
+  private static int getSyncedNumber(List<Build> builds, int synced) {
+    int result = builds.isEmpty() ? synced : builds.get(0).getNumber();
+    for (Build build : builds) {
+      if (build.isBuilding()) {
+        result = Math.min(result, build.getNumber() - 1);
+      }
+    }
+    return result;
+  }
+
+  private void saveBuildCache() {
+    if (buildCache != null) {
+      try {
+        buildCache.save();
+      } catch (IOException e) {
+        LOG.warn("Unable to save build cache " + buildCache.getFile(), e);
+      }
+    }
+  }
+
+  /**
+   * Retrieves builds more recent than the date, and with a number greater than <code>floor</code>, most recent first.
+   */
+  private List<Build> retrieveBuildsSince(Date date, int floor) throws IOException {
     List<Build> builds = new ArrayList<Build>();
-    Build current = getLastBuild();
-    int number = current != null ? current.getNumber() : 0;
-    while (number > 0 && (current == null || date.before(current.getDate()))) {
-      if (current != null) {
-        builds.add(current);
+    try {
+      if (!listBuildsSince(date, floor, builds)) {
+        Build last = getLastBuild();
+        if (last != null && last.getNumber() > floor && isAfter(last, date)) {
+          builds.add(last);
+          if (fetchThreads > 1) {
+            fetchBuildsSince(date, last.getNumber() - 1, floor, builds);
+          } else {
+            walkBuildsSince(date, last.getNumber() - 1, floor, builds);
+          }
+        }
+      }
+    } catch (IOException e) {
+      if (builds.isEmpty()) {
+        throw e;
       }
-      number--;
-      if (number > 0) {
-        current = getBuild(number);
+      keepPartialBuilds(builds, e);
+    } catch (IllegalStateException e) {
+      if (builds.isEmpty()) {
+        throw e;
       }
+      keepPartialBuilds(builds, e);
     }
     return builds;
   }
 
-  protected Document executeGet(String url) throws IOException {
-    return execute(new HttpGet(url));
+  /**
+   * Same as <code>date.before(build.getDate())</code>, without allocating a date for each build.
+   */
+  private static boolean isAfter(Build build, Date date) {
+    return build.getTimestamp() > date.getTime();
+  }
+
+  private void keepPartialBuilds(List<Build> builds, Exception e) {
+    LOG.warn("Unable to retrieve all builds from " + server.getHost() + ", keeping the " + builds.size() + " most recent ones", e);
+    complete = false;
   }
 
-  protected Document execute(HttpGet httpGet) throws IOException {
-    HttpResponse httpResponse = client.execute(httpGet);
+  /**
+   * Retrieves builds page by page, so that a whole period needs only a few requests.
+   * Servers ignoring the requested range list all builds at once, or the same builds again: listing stops there.
+   *
+   * @return <code>false</code> if the server is not able to list builds
+   */
+  private boolean listBuildsSince(Date date, int floor, List<Build> builds) throws IOException {
+    int start = 0;
+    int last = Integer.MAX_VALUE;
+    while (true) {
+      List<Build> page = getBuildsPage(date, start, PAGE_SIZE);
+      if (start == 0 && (page == null || page.isEmpty())) {
+        // Old servers ignore or reject the listing request: fall back to retrieval of builds one by one
+        return false;
+      }
+      if (page == null) {
+        throw new IllegalStateException("Unable to list builds from index " + start);
+      }
+      if (!page.isEmpty() && page.get(0).getNumber() >= last) {
+        LOG.warn("{} lists the same builds again from index {}, keeping the {} builds listed so far",
+          new Object[] {server.getHost(), start, builds.size()});
+        return true;
+      }
+      for (Build build : page) {
+        if (build.getNumber() <= floor || !isAfter(build, date)) {
+          return true;
+        }
+        builds.add(build);
+      }
+      if (page.size() != PAGE_SIZE) {
+        // Either the last page, or all builds at once
+        return true;
+      }
+      last = page.get(page.size() - 1).getNumber();
+      int next = last - 1;
+      if (buildCache != null && buildCache.contains(next)) {
+        // Older builds are cached, there is no need to list them
+        walkBuildsSince(date, next, floor, builds);
+        return true;
+      }
+      start += PAGE_SIZE;
+    }
+  }
+
+  /**
+   * Adds builds from the given number down to the first one older than the date, or to <code>floor</code> excluded.
+   */
+  private void walkBuildsSince(Date date, int from, int floor, List<Build> builds) throws IOException {
+    for (int number = from; number > floor; number--) {
+      Build build = getBuild(number);
+      if (build != null) {
+        if (!isAfter(build, date)) {
+          return;
+        }
+        builds.add(build);
+      }
+    }
+  }
+
+  /**
+   * Same as {@link #walkBuildsSince(Date, int, int, List)}, but with up to {@link #getFetchThreads()} builds retrieved concurrently.
+   * The first build of the period is located beforehand, so that exactly the builds of the period are requested.
+   */
+  private void fetchBuildsSince(Date date, int from, int floor, List<Build> builds) throws IOException {
+    Map<Integer, Build> probes = new HashMap<Integer, Build>();
+    int first = findFirstBuildSince(date, floor + 1, from + 1, probes);
+    if (first > from) {
+      return;
+    }
+    ExecutorService executor = FetchExecutors.newExecutor(Math.min(fetchThreads, from - first + 1), virtualThreads);
+    List<Future<Build>> futures = new ArrayList<Future<Build>>();
     try {
-      int statusCode = httpResponse.getStatusLine().getStatusCode();
-      if (statusCode == 404) {
-        LOG.warn("Received 404 when trying to access {}", httpGet.getURI());
+      for (int number = from; number >= first; number--) {
+        futures.add(probes.containsKey(number) ? new ProbedBuild(probes.get(number)) : submitGetBuild(executor, number));
+      }
+      for (Future<Build> future : futures) {
+        Build build = await(future);
+        if (build != null && isAfter(build, date)) {
+          builds.add(build);
+        }
+      }
+    } finally {
+      for (Future<Build> future : futures) {
+        future.cancel(true);
+      }
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Lowest number, between <code>low</code> and <code>high</code>, from which all builds are more recent than the date.
+   * Builds from <code>high</code> onwards are known to be more recent than the date. Build numbers and dates grow
+   * together: steps doubling down from <code>high</code> bracket the first build of the period, which is then bisected,
+   * so that only a logarithmic number of builds is requested, mostly recent ones. A missing build number is given the
+   * date of the first build found at doubling distances above it: numbers missing within the period are short gaps,
+   * while discarded builds leave long runs of missing numbers, which are taken as older than the date.
+   *
+   * @param probes receives the requested builds, <code>null</code> for the missing ones
+   */
+  @VisibleForTesting
+  int findFirstBuildSince(Date date, int low, int high, Map<Integer, Build> probes) throws IOException {
+    int lo = low;
+    int hi = high;
+    for (int step = 1; step > 0 && hi - step >= lo; step <<= 1) {
+      int number = hi - step;
+      if (!isBuildSince(date, number, hi, probes)) {
+        lo = number + 1;
+        break;
+      }
+      hi = number;
+    }
+    while (lo < hi) {
+      int mid = lo + (hi - lo) / 2;
+      if (isBuildSince(date, mid, hi, probes)) {
+        hi = mid;
+      } else {
+        lo = mid + 1;
+      }
+    }
+    return lo;
+  }
+
+  private boolean isBuildSince(Date date, int number, int high, Map<Integer, Build> probes) throws IOException {
+    for (int distance = 0; distance <= MAX_GAP; distance = Math.max(1, distance << 1)) {
+      if (number + distance >= high) {
+        return true;
+      }
+      Build build = probe(number + distance, probes);
+      if (build != null) {
+        return isAfter(build, date);
+      }
+    }
+    return false;
+  }
+
+  private Build probe(int number, Map<Integer, Build> probes) throws IOException {
+    if (probes.containsKey(number)) {
+      return probes.get(number);
+    }
+    Build build = getBuild(number);
+    probes.put(number, build);
+    return build;
+  }
+
+  private Future<Build> submitGetBuild(ExecutorService executor, final int number) {
+    return executor.submit(new Callable<Build>() {
+      @Override
+      public Build call() throws IOException {
+        return getBuild(number);
+      }
+    });
+  }
+
+  private static Build await(Future<Build> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while retrieving builds", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /**
+   * Build already retrieved while locating the first build of the period.
+   */
+  private static class ProbedBuild implements Future<Build> {
+    private final Build build;
+
+    ProbedBuild(@Nullable Build build) {
+      this.build = build;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return false;
+    }
+
+    @Override
+    public boolean isDone() {
+      return true;
+    }
+
+    @Override
+    public Build get() {
+      return build;
+    }
+
+    @Override
+    public Build get(long timeout, TimeUnit unit) {
+      return build;
+    }
+  }
+
+  @CheckForNull
+  protected Build executeGet(String url) throws IOException {
+    HttpGet httpGet = newGet(url);
+    HttpContext context = newContext(httpGet);
+    try {
+      HttpResponse httpResponse = send(httpGet, context);
+      return readBuild(httpGet, httpResponse);
+    } finally {
+      httpGet.releaseConnection();
+      releaseThrottle(context);
+      countBytes(httpGet, context);
+    }
+  }
+
+  /**
+   * JSON is asked for if the server is set to use it, but servers may answer with XML anyway, so that the response is
+   * read according to its content type.
+   */
+  private HttpGet newGet(String url) {
+    HttpGet httpGet = new HttpGet(url);
+    if (server.isUseJson() && server.getBuildJsonUnmarshaller() != null) {
+      httpGet.setHeader(HttpHeaders.ACCEPT, JSON_CONTENT_TYPE);
+    }
+    return httpGet;
+  }
+
+  private boolean isJson(HttpResponse httpResponse) {
+    String contentType = getHeader(httpResponse, HttpHeaders.CONTENT_TYPE);
+    return server.getBuildJsonUnmarshaller() != null && contentType != null && contentType.contains("json");
+  }
+
+  /**
+   * Once a JSON response of the server could not be read, XML is requested instead.
+   */
+  private void fallbackToXml(boolean json, JsonSyntaxException e) {
+    if (!json) {
+      throw new IllegalStateException("Unable to parse response", e);
+    }
+    if (server.isUseJson()) {
+      LOG.warn("Unable to parse JSON response, falling back to XML: {}", e.getMessage());
+      server.setUseJson(false);
+    }
+  }
+
+  @CheckForNull
+  private Build readBuild(HttpGet httpGet, HttpResponse httpResponse) throws IOException {
+    if (isJson(httpResponse)) {
+      BufferedInputStream input = getContent(httpGet, httpResponse);
+      if (input == null) {
         return null;
       }
-      if (statusCode != 200) {
-        throw new IllegalStateException("Received " + statusCode + " when trying to access " + httpGet.getURI());
+      JsonReader reader = new JsonReader(new InputStreamReader(input, discoverEncoding(httpResponse, input)));
+      try {
+        return server.getBuildJsonUnmarshaller().toModel(reader);
+      } catch (MalformedJsonException e) {
+        throw new JsonSyntaxException(e);
+      } catch (IllegalStateException e) {
+        throw new JsonSyntaxException(e);
+      } catch (NumberFormatException e) {
+        throw new JsonSyntaxException(e);
+      }
+    }
+    Document dom = parse(httpGet, httpResponse);
+    if (dom == null) {
+      return null;
+    }
+    return server.getBuildUnmarshaller().toModel(dom.getRootElement());
+  }
+
+  @CheckForNull
+  private static Document parse(HttpGet httpGet, HttpResponse httpResponse) throws IOException {
+    try {
+      BufferedInputStream input = getContent(httpGet, httpResponse);
+      if (input == null) {
+        return null;
       }
-      String response = EntityUtils.toString(httpResponse.getEntity());
-      String encoding = discoverEncoding(httpResponse, response);
       SAXReader reader = new SAXReader();
-      reader.setEncoding(encoding);
-      return reader.read(IOUtils.toInputStream(response, encoding));
+      reader.setEncoding(discoverEncoding(httpResponse, input));
+      return reader.read(input);
     } catch (DocumentException e) {
       throw new IllegalStateException("Unable to parse response", e);
+    }
+  }
+
+  /**
+   * Streams the response through the given unmarshaller, or through the JSON one if the response is in JSON.
+   *
+   * @return <code>false</code> if the resource was not found, or the request is not supported by the server
+   */
+  protected <MODEL extends Model> boolean executeGet(String url, StreamingUnmarshaller<MODEL> unmarshaller,
+    @Nullable JsonStreamingUnmarshaller<MODEL> jsonUnmarshaller, StreamingUnmarshaller.Handler<MODEL> handler) throws IOException {
+    HttpGet httpGet = newGet(url);
+    HttpContext context = newContext(httpGet);
+    try {
+      HttpResponse httpResponse = send(httpGet, context);
+      if (httpResponse.getStatusLine().getStatusCode() == HttpStatus.SC_BAD_REQUEST) {
+        LOG.debug("Received 400 when trying to access {}", httpGet.getURI());
+        return false;
+      }
+      BufferedInputStream input = getContent(httpGet, httpResponse);
+      if (input == null) {
+        return false;
+      }
+      if (jsonUnmarshaller != null && isJson(httpResponse)) {
+        unmarshalJson(new InputStreamReader(input, discoverEncoding(httpResponse, input)), jsonUnmarshaller, handler);
+      } else {
+        unmarshaller.unmarshal(input, discoverEncoding(httpResponse, input), handler);
+      }
+      return true;
+    } catch (XMLStreamException e) {
+      throw new IllegalStateException("Unable to parse response", e);
     } finally {
       httpGet.releaseConnection();
+      releaseThrottle(context);
+      countBytes(httpGet, context);
     }
   }
 
-  private String discoverEncoding(HttpResponse httpResponse, String response) {
-    Pattern pattern = Pattern.compile("<\\?xml(?: \\w*=\".*\") encoding=\"([^ ]*)\".*");
-    Matcher matcher = pattern.matcher(response);
-    String encoding = "UTF-8";
-    if (matcher.matches()) {
-      encoding = matcher.group(1);
-    } else {
-      String contentType = httpResponse.getLastHeader("Content-Type").getValue();
-      pattern = Pattern.compile(".*charset=([^;]*).*");
-      matcher = pattern.matcher(contentType);
-      if (matcher.matches()) {
-        encoding = matcher.group(1);
+  private static <MODEL extends Model> void unmarshalJson(Reader input, JsonStreamingUnmarshaller<MODEL> unmarshaller,
+    StreamingUnmarshaller.Handler<MODEL> handler) throws IOException {
+    try {
+      unmarshaller.unmarshal(input, handler);
+    } catch (MalformedJsonException e) {
+      throw new JsonSyntaxException(e);
+    } catch (IllegalStateException e) {
+      throw new JsonSyntaxException(e);
+    } catch (NumberFormatException e) {
+      throw new JsonSyntaxException(e);
+    }
+  }
+
+  /**
+   * Requests rejected because of an expired login are sent again once the login is renewed. The rejected response is
+   * consumed first, so that its connection is available to the login requests.
+   */
+  private HttpResponse send(HttpGet httpGet, HttpContext context) throws IOException {
+    HttpResponse httpResponse = retryingExecute(httpGet, context);
+    int statusCode = httpResponse.getStatusLine().getStatusCode();
+    if (statusCode == HttpStatus.SC_UNAUTHORIZED || statusCode == HttpStatus.SC_FORBIDDEN) {
+      EntityUtils.consume(httpResponse.getEntity());
+      releaseThrottle(context);
+      if (server.renewLogin(client)) {
+        httpResponse = retryingExecute(httpGet, context);
+      }
+    }
+    return httpResponse;
+  }
+
+  /**
+   * GET requests are idempotent, so they are sent again after a network error, or a status telling that the server
+   * is temporarily unavailable, with a growing and randomized delay. The circuit breaker of the server makes requests
+   * fail at once while the server keeps failing.
+   */
+  private HttpResponse retryingExecute(HttpGet httpGet, HttpContext context) throws IOException {
+    HttpHost host = URIUtils.extractHost(httpGet.getURI());
+    CircuitBreaker circuitBreaker = connectionPool.getCircuitBreaker(host.toHostString());
+    for (int attempt = 0;; attempt++) {
+      checkDeadline(httpGet);
+      if (!circuitBreaker.allowRequest()) {
+        throw new IllegalStateException("Too many failures of " + host.toHostString() + ", not trying to access " + httpGet.getURI());
+      }
+      HttpResponse httpResponse;
+      try {
+        httpResponse = throttledExecute(httpGet, context);
+      } catch (IOException e) {
+        circuitBreaker.onFailure();
+        long delay = getRetryDelay(attempt, null);
+        if (attempt >= maxRetries || !isBeforeDeadline(delay)) {
+          throw e;
+        }
+        LOG.debug("Unable to access " + httpGet.getURI() + ", retrying", e);
+        sleep(delay);
+        continue;
+      } catch (RuntimeException e) {
+        circuitBreaker.onAbort();
+        throw e;
+      }
+      int statusCode = httpResponse.getStatusLine().getStatusCode();
+      if (!isTemporaryFailure(statusCode)) {
+        circuitBreaker.onSuccess();
+        return httpResponse;
+      }
+      circuitBreaker.onFailure();
+      long delay;
+      boolean retrying = true;
+      try {
+        Header retryAfter = httpResponse.getFirstHeader(HttpHeaders.RETRY_AFTER);
+        delay = getRetryDelay(attempt, retryAfter != null ? retryAfter.getValue() : null);
+        if (attempt >= maxRetries || !isBeforeDeadline(delay)) {
+          retrying = false;
+          return httpResponse;
+        }
+        LOG.debug("Received {} when trying to access {}, retrying", statusCode, httpGet.getURI());
+        EntityUtils.consume(httpResponse.getEntity());
+      } finally {
+        // The response given up is released even if it could not be consumed
+        if (retrying) {
+          httpGet.releaseConnection();
+          releaseThrottle(context);
+        }
+      }
+      sleep(delay);
+    }
+  }
+
+  /**
+   * Fails once the deadline is passed, and else bounds the timeouts of the request by the remaining time.
+   */
+  private void checkDeadline(HttpGet httpGet) {
+    if (deadline <= 0) {
+      return;
+    }
+    long remaining = deadline - System.currentTimeMillis();
+    if (remaining <= 0) {
+      deadlineExceeded = true;
+      throw new IllegalStateException("Time budget exhausted, not trying to access " + httpGet.getURI());
+    }
+    if (remaining < connectionPool.getSocketTimeout()) {
+      int timeout = (int) remaining;
+      HttpParams params = httpGet.getParams();
+      HttpConnectionParams.setSoTimeout(params, timeout);
+      HttpConnectionParams.setConnectionTimeout(params, Math.min(timeout, connectionPool.getConnectTimeout()));
+      HttpClientParams.setConnectionManagerTimeout(params, timeout);
+    }
+  }
+
+  private boolean isBeforeDeadline(long delay) {
+    return deadline <= 0 || System.currentTimeMillis() + delay < deadline;
+  }
+
+  private static boolean isTemporaryFailure(int statusCode) {
+    return statusCode == TOO_MANY_REQUESTS
+      || statusCode == HttpStatus.SC_BAD_GATEWAY
+      || statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE
+      || statusCode == HttpStatus.SC_GATEWAY_TIMEOUT;
+  }
+
+  /**
+   * Random delay up to the base backoff doubled at each attempt, or the delay asked for by the server.
+   */
+  @VisibleForTesting
+  long getRetryDelay(int attempt, @Nullable String retryAfter) {
+    long backoff = Math.min(MAX_RETRY_DELAY, retryBackoff << Math.min(attempt, MAX_BACKOFF_SHIFT));
+    long delay = 1 + ThreadLocalRandom.current().nextLong(Math.max(1, backoff));
+    if (retryAfter != null && StringUtils.isNumeric(retryAfter.trim())) {
+      delay = Math.max(delay, Math.min(MAX_RETRY_DELAY, Long.parseLong(retryAfter.trim()) * 1000));
+    }
+    return delay;
+  }
+
+  private static void sleep(long delay) {
+    try {
+      Thread.sleep(delay);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting to retry", e);
+    }
+  }
+
+  private HttpResponse throttledExecute(HttpGet httpGet, HttpContext context) throws IOException {
+    if (throttle == null) {
+      return client.execute(httpGet, context);
+    }
+    try {
+      if (!throttle.acquire(deadline)) {
+        deadlineExceeded = true;
+        throw new IllegalStateException("Time budget exhausted while waiting to access " + httpGet.getURI());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting to access " + httpGet.getURI(), e);
+    }
+    long start = System.nanoTime();
+    boolean sent = false;
+    try {
+      HttpResponse httpResponse = client.execute(httpGet, context);
+      context.setAttribute(THROTTLED_REQUEST, new long[] {start, httpResponse.getStatusLine().getStatusCode()});
+      sent = true;
+      return httpResponse;
+    } finally {
+      if (!sent) {
+        throttle.release(System.nanoTime() - start, -1);
+      }
+    }
+  }
+
+  /**
+   * The throttle is released once the response is consumed, so that the latency it measures includes the body.
+   */
+  private void releaseThrottle(HttpContext context) {
+    long[] request = (long[]) context.removeAttribute(THROTTLED_REQUEST);
+    if (request != null) {
+      throttle.release(System.nanoTime() - request[0], (int) request[1]);
+    }
+  }
+
+  /**
+   * With preemptive authentication, the target host is registered in an authentication cache, so that credentials are
+   * sent with the request. The cache is not shared between requests, as they may run concurrently.
+   */
+  private HttpContext newContext(HttpGet httpGet) {
+    HttpContext context = new BasicHttpContext();
+    if (server.isPreemptiveAuthentication()) {
+      AuthCache authCache = new BasicAuthCache();
+      authCache.put(URIUtils.extractHost(httpGet.getURI()), new BasicScheme());
+      context.setAttribute(ClientContext.AUTH_CACHE, authCache);
+    }
+    return context;
+  }
+
+  private void countBytes(HttpGet httpGet, HttpContext context) {
+    if (context.getAttribute(ClientContext.AUTH_CACHE) != null && isAuthenticated(context)) {
+      savedChallenges.incrementAndGet();
+    }
+    long wire = ByteCountingInterceptor.getCount(context, ByteCountingInterceptor.WIRE_BYTES);
+    long content = ByteCountingInterceptor.getCount(context, ByteCountingInterceptor.CONTENT_BYTES);
+    wireBytes.addAndGet(wire);
+    contentBytes.addAndGet(content);
+    LOG.debug("Received {} bytes from {}, {} bytes once decompressed", new Object[] {wire, httpGet.getURI(), content});
+  }
+
+  private static boolean isAuthenticated(HttpContext context) {
+    AuthState authState = (AuthState) context.getAttribute(ClientContext.TARGET_AUTH_STATE);
+    return authState != null && authState.getState() == AuthProtocolState.SUCCESS;
+  }
+
+  /**
+   * Number of requests authenticated without a challenge from the server, thanks to preemptive authentication.
+   */
+  public int getSavedChallenges() {
+    return savedChallenges.get();
+  }
+
+  public long getWireBytes() {
+    return wireBytes.get();
+  }
+
+  public long getContentBytes() {
+    return contentBytes.get();
+  }
+
+  @CheckForNull
+  private static BufferedInputStream getContent(HttpGet httpGet, HttpResponse httpResponse) throws IOException {
+    int statusCode = httpResponse.getStatusLine().getStatusCode();
+    if (statusCode == 404) {
+      LOG.warn("Received 404 when trying to access {}", httpGet.getURI());
+      return null;
+    }
+    if (statusCode != 200) {
+      throw new IllegalStateException("Received " + statusCode + " when trying to access " + httpGet.getURI());
+    }
+    return new BufferedInputStream(httpResponse.getEntity().getContent());
+  }
+
+  /**
+   * Encoding declared by the XML prolog, read ahead of the stream, or else by the Content-Type header.
+   */
+  private static String discoverEncoding(HttpResponse httpResponse, BufferedInputStream input) throws IOException {
+    byte[] prolog = new byte[PROLOG_MAX_LENGTH];
+    input.mark(PROLOG_MAX_LENGTH);
+    int length = IOUtils.read(input, prolog);
+    input.reset();
+    Matcher matcher = PROLOG_ENCODING.matcher(new String(prolog, 0, length, "ISO-8859-1"));
+    if (matcher.find()) {
+      return matcher.group(1);
+    }
+    Header contentType = httpResponse.getLastHeader("Content-Type");
+    if (contentType != null) {
+      matcher = CHARSET.matcher(contentType.getValue());
+      if (matcher.find()) {
+        return matcher.group(1);
       }
     }
-    return encoding;
+    return "UTF-8";
   }
 }
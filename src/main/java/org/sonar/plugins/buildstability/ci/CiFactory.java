@@ -43,11 +43,12 @@ public final class CiFactory {
     return StringUtils.substringAfter(ciUrl, ":");
   }
 
-  public static CiConnector create(String ciUrl, String username, String password, boolean useJSecurityCheck) {
-    return create(getSystem(ciUrl), getUrl(ciUrl), username, password, useJSecurityCheck);
+  public static CiConnector create(String ciUrl, String username, String password, boolean useJSecurityCheck, CiConnectionPool connectionPool) {
+    return create(getSystem(ciUrl), getUrl(ciUrl), username, password, useJSecurityCheck, connectionPool);
   }
 
-  public static CiConnector create(String system, String url, String username, String password, boolean useJSecurityCheck) {
+  public static CiConnector create(String system, String url, String username, String password, boolean useJSecurityCheck,
+    CiConnectionPool connectionPool) {
     AbstractServer server;
     String pattern;
     if (BambooServer.SYSTEM.equalsIgnoreCase(system)) {
@@ -75,6 +76,6 @@ public final class CiFactory {
     server.setHost(base);
     server.setKey(key);
 
-    return new CiConnector(server);
+    return new CiConnector(server, connectionPool);
   }
 }
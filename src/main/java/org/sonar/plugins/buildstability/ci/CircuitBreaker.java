@@ -0,0 +1,80 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci;
+
+/**
+ * Makes requests to a CI server fail at once while the server keeps failing, rather than each of them waiting for
+ * timeouts and retries. After a number of consecutive failures the circuit opens. Once a delay has elapsed, a single
+ * trial request is allowed: the circuit closes if it succeeds, and opens again if it fails.
+ */
+public class CircuitBreaker {
+  private final int failureThreshold;
+  private final long openDelay;
+
+  private int failures;
+  private long openedAt;
+  private boolean trial;
+
+  /**
+   * @param failureThreshold number of consecutive failures opening the circuit
+   * @param openDelay time in milliseconds before a trial request is allowed
+   */
+  public CircuitBreaker(int failureThreshold, long openDelay) {
+    this.failureThreshold = failureThreshold;
+    this.openDelay = openDelay;
+  }
+
+  public synchronized boolean allowRequest() {
+    if (openedAt == 0) {
+      return true;
+    }
+    if (!trial && System.currentTimeMillis() - openedAt >= openDelay) {
+      trial = true;
+      return true;
+    }
+    return false;
+  }
+
+  public synchronized void onSuccess() {
+    failures = 0;
+    openedAt = 0;
+    trial = false;
+  }
+
+  public synchronized void onFailure() {
+    failures++;
+    if (trial || failures >= failureThreshold) {
+      openedAt = System.currentTimeMillis();
+      trial = false;
+    }
+  }
+
+  /**
+   * Called when an allowed request ends without an answer of the server, for instance when interrupted, so that a
+   * pending trial request does not keep the circuit open forever.
+   */
+  public synchronized void onAbort() {
+    trial = false;
+  }
+
+  public synchronized boolean isOpen() {
+    return openedAt != 0;
+  }
+}
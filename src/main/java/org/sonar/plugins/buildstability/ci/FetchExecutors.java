@@ -0,0 +1,134 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.CheckForNull;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executors of build retrievals. On runtimes supporting virtual threads (Java 21 and later), each retrieval runs on its
+ * own virtual thread, and a semaphore bounds how many run at a time. Otherwise a fixed pool of platform threads is used.
+ */
+final class FetchExecutors {
+  private static final Logger LOG = LoggerFactory.getLogger(FetchExecutors.class);
+  private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutorFactory();
+
+  /**
+   * Hide utility-class constructor.
+   */
+  private FetchExecutors() {
+  }
+
+  @CheckForNull
+  private static Method findVirtualThreadExecutorFactory() {
+    try {
+      return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  static boolean isVirtualThreadsSupported() {
+    return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+  }
+
+  /**
+   * @param limit maximum number of builds retrieved at a time
+   * @param virtualThreads whether virtual threads are to be used when supported
+   */
+  static ExecutorService newExecutor(int limit, boolean virtualThreads) {
+    if (virtualThreads && NEW_VIRTUAL_THREAD_EXECUTOR != null) {
+      try {
+        return new BoundedExecutor((ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null), limit);
+      } catch (Exception e) {
+        LOG.debug("Unable to create virtual threads, using platform threads", e);
+      }
+    }
+    return Executors.newFixedThreadPool(limit, new DaemonThreadFactory("build-stability-fetch-"));
+  }
+
+  /**
+   * Runs at most <code>limit</code> tasks of a thread-per-task executor at a time.
+   */
+  static class BoundedExecutor extends AbstractExecutorService {
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+
+    BoundedExecutor(ExecutorService delegate, int limit) {
+      this.delegate = delegate;
+      this.permits = new Semaphore(limit);
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+      delegate.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            permits.acquire();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+          try {
+            command.run();
+          } finally {
+            permits.release();
+          }
+        }
+      });
+    }
+
+    @Override
+    public void shutdown() {
+      delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+      return delegate.awaitTermination(timeout, unit);
+    }
+  }
+}
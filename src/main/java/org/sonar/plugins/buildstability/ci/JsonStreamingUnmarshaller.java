@@ -0,0 +1,89 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.sonar.plugins.buildstability.ci.api.JsonUnmarshaller;
+import org.sonar.plugins.buildstability.ci.api.Model;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Counterpart of {@link StreamingUnmarshaller} for JSON responses: the objects of the arrays of a given name are
+ * unmarshalled as they are read, and are not looked into.
+ */
+class JsonStreamingUnmarshaller<MODEL extends Model> {
+  private final String arrayName;
+  private final JsonUnmarshaller<MODEL> unmarshaller;
+
+  JsonStreamingUnmarshaller(String arrayName, JsonUnmarshaller<MODEL> unmarshaller) {
+    this.arrayName = arrayName;
+    this.unmarshaller = unmarshaller;
+  }
+
+  void unmarshal(Reader input, StreamingUnmarshaller.Handler<MODEL> handler) throws IOException {
+    JsonReader reader = new JsonReader(input);
+    try {
+      unmarshalValue(reader, handler);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void unmarshalValue(JsonReader reader, StreamingUnmarshaller.Handler<MODEL> handler) throws IOException {
+    JsonToken token = reader.peek();
+    if (token == JsonToken.BEGIN_OBJECT) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if (arrayName.equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+          unmarshalArray(reader, handler);
+        } else {
+          unmarshalValue(reader, handler);
+        }
+      }
+      reader.endObject();
+    } else if (token == JsonToken.BEGIN_ARRAY) {
+      reader.beginArray();
+      while (reader.hasNext()) {
+        unmarshalValue(reader, handler);
+      }
+      reader.endArray();
+    } else {
+      reader.skipValue();
+    }
+  }
+
+  private void unmarshalArray(JsonReader reader, StreamingUnmarshaller.Handler<MODEL> handler) throws IOException {
+    reader.beginArray();
+    while (reader.hasNext()) {
+      if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+        MODEL model = unmarshaller.toModel(reader);
+        if (model != null) {
+          handler.handle(model);
+        }
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endArray();
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits requests sent to a CI server, shared by all the connectors of this server.
+ * <ul>
+ * <li>A token bucket limits the rate of requests, allowing bursts of up to one second worth of requests.</li>
+ * <li>When adaptive, the number of concurrent requests follows an additive increase / multiplicative decrease
+ * scheme: it grows by one request per round of successful requests, and is halved as soon as the server answers
+ * with 429 or 5xx, or much slower than its average response time.</li>
+ * </ul>
+ */
+public class RequestThrottle {
+  /**
+   * Responses slower than this factor times the average response time are taken as a sign of overload.
+   */
+  private static final double LATENCY_TOLERANCE = 3.0;
+  /**
+   * Weight of the last response in the moving average of response times.
+   */
+  private static final double LATENCY_WEIGHT = 0.1;
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final double requestsPerSecond;
+  private final int maxConcurrency;
+  private final boolean adaptive;
+
+  private double tokens;
+  private long refilled;
+  private double limit;
+  private int inFlight;
+  private double averageLatency;
+
+  /**
+   * @param requestsPerSecond maximum rate of requests, <code>0</code> for no limit
+   * @param maxConcurrency maximum number of concurrent requests
+   * @param adaptive whether the number of concurrent requests adapts to the responses of the server
+   */
+  public RequestThrottle(double requestsPerSecond, int maxConcurrency, boolean adaptive) {
+    this.requestsPerSecond = requestsPerSecond;
+    this.maxConcurrency = Math.max(1, maxConcurrency);
+    this.adaptive = adaptive;
+    this.tokens = Math.max(1, requestsPerSecond);
+    this.refilled = System.nanoTime();
+    this.limit = this.maxConcurrency;
+  }
+
+  /**
+   * Waits until a request may be sent.
+   */
+  public void acquire() throws InterruptedException {
+    acquire(0);
+  }
+
+  /**
+   * Waits until a request may be sent, but not after the deadline.
+   *
+   * @param deadline time in milliseconds since the epoch, <code>0</code> for no deadline
+   * @return <code>false</code> if the deadline passed before a request could be sent
+   */
+  public synchronized boolean acquire(long deadline) throws InterruptedException {
+    while (true) {
+      long waitNanos = 0;
+      if (inFlight < (int) limit) {
+        waitNanos = takeToken();
+        if (waitNanos <= 0) {
+          inFlight++;
+          return true;
+        }
+      }
+      if (deadline > 0) {
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(deadline - System.currentTimeMillis());
+        if (remainingNanos <= 0) {
+          return false;
+        }
+        waitNanos = waitNanos > 0 ? Math.min(waitNanos, remainingNanos) : remainingNanos;
+      }
+      if (waitNanos > 0) {
+        TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+      } else {
+        wait();
+      }
+    }
+  }
+
+  /**
+   * @return <code>0</code> if a token was taken, else how long to wait for the next token
+   */
+  private long takeToken() {
+    if (requestsPerSecond <= 0) {
+      return 0;
+    }
+    long now = System.nanoTime();
+    tokens = Math.min(Math.max(1, requestsPerSecond), tokens + (now - refilled) * requestsPerSecond / NANOS_PER_SECOND);
+    refilled = now;
+    if (tokens >= 1) {
+      tokens--;
+      return 0;
+    }
+    return Math.max(1, (long) ((1 - tokens) * NANOS_PER_SECOND / requestsPerSecond));
+  }
+
+  /**
+   * Called once the response of a request is consumed.
+   *
+   * @param latencyNanos time taken by the server to answer, including the transfer of the body
+   * @param statusCode status of the response, or <code>-1</code> if the request failed
+   */
+  public synchronized void release(long latencyNanos, int statusCode) {
+    inFlight--;
+    if (adaptive) {
+      boolean overloaded = statusCode == 429 || statusCode >= 500 || statusCode < 0;
+      if (!overloaded && latencyNanos > 0) {
+        overloaded = averageLatency > 0 && latencyNanos > LATENCY_TOLERANCE * averageLatency;
+        averageLatency = averageLatency > 0 ? averageLatency + LATENCY_WEIGHT * (latencyNanos - averageLatency) : latencyNanos;
+      }
+      if (overloaded) {
+        limit = Math.max(1, limit / 2);
+      } else {
+        limit = Math.min(maxConcurrency, limit + 1 / limit);
+      }
+    }
+    notifyAll();
+  }
+
+  @VisibleForTesting
+  synchronized int getLimit() {
+    return (int) limit;
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci;
+
+import org.dom4j.Element;
+import org.dom4j.io.STAXEventReader;
+import org.sonar.plugins.buildstability.ci.api.Model;
+import org.sonar.plugins.buildstability.ci.api.Unmarshaller;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
+
+import java.io.InputStream;
+
+/**
+ * Unmarshals elements of a given name as they are read from a stream, so that only one element at a time is held in
+ * memory, whatever the size of the response. Matching elements are looked for below the root element, and are not
+ * looked into.
+ */
+class StreamingUnmarshaller<MODEL extends Model> {
+  private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+  interface Handler<MODEL extends Model> {
+    void handle(MODEL model);
+  }
+
+  private final String elementName;
+  private final Unmarshaller<MODEL> unmarshaller;
+
+  StreamingUnmarshaller(String elementName, Unmarshaller<MODEL> unmarshaller) {
+    this.elementName = elementName;
+    this.unmarshaller = unmarshaller;
+  }
+
+  void unmarshal(InputStream input, String encoding, Handler<MODEL> handler) throws XMLStreamException {
+    XMLEventReader reader = INPUT_FACTORY.createXMLEventReader(input, encoding);
+    try {
+      STAXEventReader elementReader = new STAXEventReader();
+      boolean inRoot = false;
+      while (reader.hasNext()) {
+        XMLEvent event = reader.peek();
+        if (inRoot && event.isStartElement() && elementName.equals(event.asStartElement().getName().getLocalPart())) {
+          Element element = elementReader.readElement(reader);
+          MODEL model = unmarshaller.toModel(element);
+          if (model != null) {
+            handler.handle(model);
+          }
+        } else {
+          inRoot |= event.isStartElement();
+          reader.nextEvent();
+        }
+      }
+    } finally {
+      reader.close();
+    }
+  }
+}
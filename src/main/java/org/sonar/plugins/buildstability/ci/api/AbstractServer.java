@@ -24,7 +24,12 @@ import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.impl.client.DefaultHttpClient;
 
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.io.File;
 import java.io.IOException;
+import java.util.Date;
 
 /**
  * @author Evgeny Mandrikov
@@ -34,6 +39,8 @@ public abstract class AbstractServer {
   private String username;
   private String password;
   private String key;
+  private File cacheDirectory;
+  private volatile boolean useJson;
 
   public AbstractServer() {
   }
@@ -70,12 +77,82 @@ public abstract class AbstractServer {
     this.key = key;
   }
 
+  @CheckForNull
+  public File getCacheDirectory() {
+    return cacheDirectory;
+  }
+
+  /**
+   * Directory where state, such as login sessions, may be kept between analyses.
+   */
+  public void setCacheDirectory(@Nullable File cacheDirectory) {
+    this.cacheDirectory = cacheDirectory;
+  }
+
+  public boolean isUseJson() {
+    return useJson;
+  }
+
+  /**
+   * Whether builds are requested in JSON rather than in XML, if the server supports it.
+   */
+  public void setUseJson(boolean useJson) {
+    this.useJson = useJson;
+  }
+
   public abstract String getBuildUrl(String number);
 
   public abstract String getLastBuildUrl();
 
   public abstract Unmarshaller<Build> getBuildUnmarshaller();
 
+  /**
+   * URL to retrieve a page of builds, most recent first, in a single request.
+   * Servers able to filter on date only list builds started after <code>since</code>, others list all builds.
+   *
+   * @param since date of the oldest builds of interest
+   * @param start index of the first build of the page, 0 being the most recent build
+   * @param count maximum number of builds in the page
+   * @return <code>null</code> if the server is not able to list builds, in which case builds are retrieved one by one
+   */
+  @CheckForNull
+  public String getBuildsUrl(Date since, int start, int count) {
+    return null;
+  }
+
+  /**
+   * Name of the elements of a builds page response, each of them being unmarshalled with {@link #getBuildUnmarshaller()}.
+   */
+  @CheckForNull
+  public String getBuildsElementName() {
+    return null;
+  }
+
+  /**
+   * @return <code>null</code> if the server does not serve builds in JSON
+   */
+  @CheckForNull
+  public JsonUnmarshaller<Build> getBuildJsonUnmarshaller() {
+    return null;
+  }
+
+  /**
+   * Name of the array of a builds page JSON response, each object of which being unmarshalled with
+   * {@link #getBuildJsonUnmarshaller()}.
+   */
+  @CheckForNull
+  public String getBuildsArrayName() {
+    return null;
+  }
+
+  /**
+   * Whether credentials registered by {@link #doLogin(DefaultHttpClient)} are sent with Basic authentication along with
+   * each request, rather than after an authentication challenge of the server, which takes another round trip.
+   */
+  public boolean isPreemptiveAuthentication() {
+    return StringUtils.isNotBlank(getUsername()) && StringUtils.isNotBlank(getPassword());
+  }
+
   public void doLogin(DefaultHttpClient client) throws IOException {
     if (StringUtils.isNotBlank(getUsername()) && StringUtils.isNotBlank(getPassword())) {
       client.getCredentialsProvider().setCredentials(
@@ -83,4 +160,14 @@ public abstract class AbstractServer {
           new UsernamePasswordCredentials(getUsername(), getPassword()));
     }
   }
+
+  /**
+   * Called when a request is rejected with a 401 or 403 status, which may mean that the session opened by
+   * {@link #doLogin(DefaultHttpClient)} has expired.
+   *
+   * @return <code>true</code> if the login was renewed, and the request is worth retrying
+   */
+  public boolean renewLogin(DefaultHttpClient client) throws IOException {
+    return false;
+  }
 }
@@ -52,6 +52,11 @@ public class Build implements Model {
    */
   private long timestamp;
 
+  /**
+   * True, if build is not finished yet, so that its result and duration may still change.
+   */
+  private boolean building;
+
   public Build(int number, long timestamp, String result, boolean successful, double duration) {
     this.number = number;
     this.timestamp = timestamp;
@@ -107,6 +112,14 @@ public class Build implements Model {
     this.timestamp = timestamp;
   }
 
+  public boolean isBuilding() {
+    return building;
+  }
+
+  public void setBuilding(boolean building) {
+    this.building = building;
+  }
+
   @Override
   public String toString() {
     return new ToStringBuilder(this).
@@ -115,6 +128,7 @@ public class Build implements Model {
         append("result", result).
         append("successful", successful).
         append("duration", duration).
+        append("building", building).
         toString();
   }
 }
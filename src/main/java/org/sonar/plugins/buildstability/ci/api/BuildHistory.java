@@ -0,0 +1,196 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci.api;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Builds stored column by column in arrays of primitives, rather than as {@link Build} objects, so that long histories
+ * take little memory and are analysed without allocations. Results are reduced to a status code, and durations to
+ * milliseconds, up to {@link Integer#MAX_VALUE}.
+ */
+public final class BuildHistory {
+  public static final byte SUCCESSFUL = 0;
+  public static final byte FAILED = 1;
+  /**
+   * Build not finished yet, which is not successful.
+   */
+  public static final byte BUILDING = 2;
+
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private int[] numbers;
+  private long[] timestamps;
+  private int[] durations;
+  private byte[] statuses;
+  private int size;
+
+  public BuildHistory() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public BuildHistory(int capacity) {
+    int length = Math.max(1, capacity);
+    numbers = new int[length];
+    timestamps = new long[length];
+    durations = new int[length];
+    statuses = new byte[length];
+  }
+
+  public static BuildHistory of(Collection<Build> builds) {
+    BuildHistory history = new BuildHistory(builds.size());
+    for (Build build : builds) {
+      history.add(build);
+    }
+    return history;
+  }
+
+  public void add(Build build) {
+    byte status;
+    if (build.isSuccessful()) {
+      status = SUCCESSFUL;
+    } else {
+      status = build.isBuilding() ? BUILDING : FAILED;
+    }
+    add(build.getNumber(), build.getTimestamp(), toMillis(build.getDuration()), status);
+  }
+
+  public void add(int number, long timestamp, int duration, byte status) {
+    if (size == numbers.length) {
+      int length = size + (size >> 1) + 1;
+      numbers = Arrays.copyOf(numbers, length);
+      timestamps = Arrays.copyOf(timestamps, length);
+      durations = Arrays.copyOf(durations, length);
+      statuses = Arrays.copyOf(statuses, length);
+    }
+    numbers[size] = number;
+    timestamps[size] = timestamp;
+    durations[size] = duration;
+    statuses[size] = status;
+    size++;
+  }
+
+  private static int toMillis(double duration) {
+    return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, Math.round(duration)));
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int getNumber(int index) {
+    return numbers[checkIndex(index)];
+  }
+
+  public long getTimestamp(int index) {
+    return timestamps[checkIndex(index)];
+  }
+
+  /**
+   * Duration in milliseconds.
+   */
+  public int getDuration(int index) {
+    return durations[checkIndex(index)];
+  }
+
+  public byte getStatus(int index) {
+    return statuses[checkIndex(index)];
+  }
+
+  public boolean isSuccessful(int index) {
+    return getStatus(index) == SUCCESSFUL;
+  }
+
+  private int checkIndex(int index) {
+    if (index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    return index;
+  }
+
+  /**
+   * Sorts builds by ascending number, keeping the order of builds with the same number. Builds are usually retrieved
+   * most recent first, in which case they are only reversed.
+   */
+  public void sortByNumber() {
+    if (isSortedByNumber(1)) {
+      return;
+    }
+    if (isSortedByNumber(-1)) {
+      reverse();
+      return;
+    }
+    // Numbers and indexes packed in longs, so that indexes are sorted along with numbers without boxing
+    long[] keys = new long[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = ((long) numbers[i] << 32) | i;
+    }
+    Arrays.sort(keys);
+    int[] sortedNumbers = new int[numbers.length];
+    long[] sortedTimestamps = new long[timestamps.length];
+    int[] sortedDurations = new int[durations.length];
+    byte[] sortedStatuses = new byte[statuses.length];
+    for (int i = 0; i < size; i++) {
+      int index = (int) keys[i];
+      sortedNumbers[i] = numbers[index];
+      sortedTimestamps[i] = timestamps[index];
+      sortedDurations[i] = durations[index];
+      sortedStatuses[i] = statuses[index];
+    }
+    numbers = sortedNumbers;
+    timestamps = sortedTimestamps;
+    durations = sortedDurations;
+    statuses = sortedStatuses;
+  }
+
+  /**
+   * @param direction 1 for ascending numbers, -1 for strictly descending ones
+   */
+  private boolean isSortedByNumber(int direction) {
+    for (int i = 1; i < size; i++) {
+      if (direction > 0 ? numbers[i - 1] > numbers[i] : numbers[i - 1] <= numbers[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void reverse() {
+    for (int i = 0, j = size - 1; i < j; i++, j--) {
+      int number = numbers[i];
+      numbers[i] = numbers[j];
+      numbers[j] = number;
+      long timestamp = timestamps[i];
+      timestamps[i] = timestamps[j];
+      timestamps[j] = timestamp;
+      int duration = durations[i];
+      durations[i] = durations[j];
+      durations[j] = duration;
+      byte status = statuses[i];
+      statuses[i] = statuses[j];
+      statuses[j] = status;
+    }
+  }
+}
@@ -0,0 +1,39 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci.api;
+
+import com.google.gson.stream.JsonReader;
+
+import javax.annotation.CheckForNull;
+
+import java.io.IOException;
+
+/**
+ * Counterpart of {@link Unmarshaller} for JSON responses, reading the object at the current position of a stream.
+ */
+public interface JsonUnmarshaller<MODEL extends Model> {
+  /**
+   * Reads the whole object, leaving the reader after its end.
+   *
+   * @return <code>null</code> if the object does not describe a model
+   */
+  @CheckForNull
+  MODEL toModel(JsonReader reader) throws IOException;
+}
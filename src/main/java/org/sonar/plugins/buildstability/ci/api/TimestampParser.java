@@ -0,0 +1,133 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci.api;
+
+/**
+ * Parses the ISO 8601 date-times sent by CI servers, without any intermediate object, so that it may be shared by the
+ * unmarshallers of concurrently retrieved builds. Both the extended format of Bamboo, such as
+ * <code>2010-01-04T11:02:17.114-06:00</code>, and the basic format of TeamCity, such as
+ * <code>20131124T053500+0000</code>, are accepted.
+ */
+public final class TimestampParser {
+  private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+  private static final int DAYS_PER_ERA = 146097;
+  private static final int DAYS_FROM_YEAR_0_TO_EPOCH = 719468;
+
+  /**
+   * Hide utility-class constructor.
+   */
+  private TimestampParser() {
+  }
+
+  /**
+   * Digits of fractions of seconds beyond milliseconds are ignored.
+   *
+   * @return milliseconds since the epoch
+   * @throws IllegalArgumentException if the date-time is not in one of the accepted formats, or has no time zone
+   */
+  public static long parse(String dateTime) {
+    int year = digits(dateTime, 0, 4);
+    int pos = skip(dateTime, 4, '-');
+    int month = digits(dateTime, pos, 2);
+    pos = skip(dateTime, pos + 2, '-');
+    int day = digits(dateTime, pos, 2);
+    pos += 2;
+    if (pos >= dateTime.length() || dateTime.charAt(pos) != 'T') {
+      throw invalid(dateTime);
+    }
+    int hour = digits(dateTime, pos + 1, 2);
+    pos = skip(dateTime, pos + 3, ':');
+    int minute = digits(dateTime, pos, 2);
+    pos = skip(dateTime, pos + 2, ':');
+    int second = digits(dateTime, pos, 2);
+    pos += 2;
+    int millis = 0;
+    if (pos < dateTime.length() && dateTime.charAt(pos) == '.') {
+      pos++;
+      int scale = 100;
+      while (pos < dateTime.length() && isDigit(dateTime.charAt(pos))) {
+        millis += (dateTime.charAt(pos) - '0') * scale;
+        scale /= 10;
+        pos++;
+      }
+    }
+    if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 59) {
+      throw invalid(dateTime);
+    }
+    long minutes = (daysFromEpoch(year, month, day) * 24 + hour) * 60 + minute - offsetMinutes(dateTime, pos);
+    return minutes * MILLIS_PER_MINUTE + second * 1000L + millis;
+  }
+
+  private static int offsetMinutes(String dateTime, int pos) {
+    if (pos == dateTime.length() - 1 && dateTime.charAt(pos) == 'Z') {
+      return 0;
+    }
+    if (pos >= dateTime.length() || (dateTime.charAt(pos) != '+' && dateTime.charAt(pos) != '-')) {
+      throw invalid(dateTime);
+    }
+    int hours = digits(dateTime, pos + 1, 2);
+    int minutesPos = skip(dateTime, pos + 3, ':');
+    int minutes = digits(dateTime, minutesPos, 2);
+    if (minutesPos + 2 != dateTime.length() || minutes > 59) {
+      throw invalid(dateTime);
+    }
+    int offset = hours * 60 + minutes;
+    return dateTime.charAt(pos) == '-' ? -offset : offset;
+  }
+
+  /**
+   * Days from 1970-01-01 to the given date of the proleptic Gregorian calendar.
+   */
+  private static long daysFromEpoch(int year, int month, int day) {
+    int y = month <= 2 ? year - 1 : year;
+    int era = (y >= 0 ? y : y - 399) / 400;
+    int yearOfEra = y - era * 400;
+    int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return (long) era * DAYS_PER_ERA + dayOfEra - DAYS_FROM_YEAR_0_TO_EPOCH;
+  }
+
+  private static int digits(String dateTime, int pos, int count) {
+    if (pos + count > dateTime.length()) {
+      throw invalid(dateTime);
+    }
+    int value = 0;
+    for (int i = pos; i < pos + count; i++) {
+      char c = dateTime.charAt(i);
+      if (!isDigit(c)) {
+        throw invalid(dateTime);
+      }
+      value = value * 10 + c - '0';
+    }
+    return value;
+  }
+
+  private static int skip(String dateTime, int pos, char separator) {
+    return pos < dateTime.length() && dateTime.charAt(pos) == separator ? pos + 1 : pos;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static IllegalArgumentException invalid(String dateTime) {
+    return new IllegalArgumentException("Invalid date-time: " + dateTime);
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci.bamboo;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.sonar.plugins.buildstability.ci.api.Build;
+import org.sonar.plugins.buildstability.ci.api.JsonUnmarshaller;
+
+import java.io.IOException;
+
+/**
+ * Reads the same fields as {@link BambooBuildUnmarshaller}, from a result, or from the first result of a list of results.
+ */
+public class BambooBuildJsonUnmarshaller implements JsonUnmarshaller<Build> {
+
+  @Override
+  public Build toModel(JsonReader reader) throws IOException {
+    Build listed = null;
+    Integer number = null;
+    String state = null;
+    String lifeCycleState = null;
+    String buildStartedTime = null;
+    double durationInSeconds = 0;
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull();
+      } else if ("results".equals(name)) {
+        listed = toFirstModel(reader);
+      } else if ("number".equals(name)) {
+        number = reader.nextInt();
+      } else if ("state".equals(name)) {
+        state = reader.nextString();
+      } else if ("lifeCycleState".equals(name)) {
+        lifeCycleState = reader.nextString();
+      } else if ("buildStartedTime".equals(name)) {
+        buildStartedTime = reader.nextString();
+      } else if ("buildDurationInSeconds".equals(name)) {
+        durationInSeconds = reader.nextDouble();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    if (number == null) {
+      return listed;
+    }
+    Build build = new Build();
+    build.setNumber(number);
+    build.setResult(state);
+    if (buildStartedTime != null) {
+      BambooBuildUnmarshaller.setTimestamp(build, buildStartedTime);
+    }
+    build.setDuration(durationInSeconds * 1000);
+    build.setSuccessful(BambooBuildUnmarshaller.isSuccessful(state));
+    build.setBuilding(BambooBuildUnmarshaller.isBuilding(lifeCycleState));
+    return build;
+  }
+
+  private Build toFirstModel(JsonReader reader) throws IOException {
+    Build build = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if ("result".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+          if (build == null) {
+            build = toModel(reader);
+          } else {
+            reader.skipValue();
+          }
+        }
+        reader.endArray();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return build;
+  }
+}
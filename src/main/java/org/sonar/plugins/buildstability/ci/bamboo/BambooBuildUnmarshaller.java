@@ -23,23 +23,24 @@ import org.dom4j.Element;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.plugins.buildstability.ci.api.Build;
+import org.sonar.plugins.buildstability.ci.api.TimestampParser;
 import org.sonar.plugins.buildstability.ci.api.Unmarshaller;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import javax.annotation.Nullable;
 
 /**
  * @author Evgeny Mandrikov
  */
 public class BambooBuildUnmarshaller implements Unmarshaller<Build> {
   private static final String SUCCESSFULL = "Successful";
+  private static final String FINISHED = "Finished";
+  private static final String NOT_BUILT = "NotBuilt";
   private static final Logger LOG = LoggerFactory.getLogger(BambooBuildUnmarshaller.class);
 
   /**
-   * Bamboo date-time format. Example: 2010-01-04T11:02:17.114-0600
+   * Bamboo date-time format. Example: 2010-01-04T11:02:17.114-06:00
    */
-  private static final String DATE_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+  private static final String DATE_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSXXX";
 
   @Override
   public Build toModel(Element rootElement) {
@@ -60,22 +61,27 @@ public class BambooBuildUnmarshaller implements Unmarshaller<Build> {
     build.setNumber(Integer.parseInt(result.attributeValue("number")));
     build.setResult(state);
 
-    SimpleDateFormat sdf = new SimpleDateFormat(DATE_TIME_FORMAT);
-    String buildStartedTime = result.elementText("buildStartedTime");
-    // Remove ':' in the timezone because it is not was the Java format expect
-    int timezoneColonSeparatorIndex = buildStartedTime.length() - 3;
-    if (buildStartedTime.charAt(timezoneColonSeparatorIndex) == ':') {
-      buildStartedTime = buildStartedTime.substring(0, timezoneColonSeparatorIndex) + buildStartedTime.substring(timezoneColonSeparatorIndex + 1);
-    }
+    setTimestamp(build, result.elementText("buildStartedTime"));
+    build.setDuration(Double.parseDouble(result.elementText("buildDurationInSeconds")) * 1000);
+    build.setSuccessful(isSuccessful(state));
+    build.setBuilding(isBuilding(result.attributeValue("lifeCycleState")));
+
+    return build;
+  }
+
+  static void setTimestamp(Build build, String buildStartedTime) {
     try {
-      Date date = sdf.parse(buildStartedTime);
-      build.setTimestamp(date.getTime());
-    } catch (ParseException ignored) {
+      build.setTimestamp(TimestampParser.parse(buildStartedTime));
+    } catch (IllegalArgumentException e) {
       LOG.warn("Unable to parse date {}. Expected format is {}", buildStartedTime, DATE_TIME_FORMAT);
     }
-    build.setDuration(Double.parseDouble(result.elementText("buildDurationInSeconds")) * 1000);
-    build.setSuccessful(SUCCESSFULL.equalsIgnoreCase(state));
+  }
 
-    return build;
+  static boolean isSuccessful(@Nullable String state) {
+    return SUCCESSFULL.equalsIgnoreCase(state);
+  }
+
+  static boolean isBuilding(@Nullable String lifeCycleState) {
+    return lifeCycleState != null && !FINISHED.equalsIgnoreCase(lifeCycleState) && !NOT_BUILT.equalsIgnoreCase(lifeCycleState);
   }
 }
@@ -21,10 +21,12 @@ package org.sonar.plugins.buildstability.ci.bamboo;
 
 import org.sonar.plugins.buildstability.ci.api.AbstractServer;
 import org.sonar.plugins.buildstability.ci.api.Build;
+import org.sonar.plugins.buildstability.ci.api.JsonUnmarshaller;
 import org.sonar.plugins.buildstability.ci.api.Unmarshaller;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.Date;
 
 /**
  * See <a href="http://confluence.atlassian.com/display/BAMBOO/Bamboo+REST+APIs">Bamboo REST APIs</a>.
@@ -35,6 +37,7 @@ public class BambooServer extends AbstractServer {
   public static final String SYSTEM = "Bamboo";
   public static final String PATTERN = "/browse/";
   private static final Unmarshaller<Build> BUILD_UNMARSHALLER = new BambooBuildUnmarshaller();
+  private static final JsonUnmarshaller<Build> BUILD_JSON_UNMARSHALLER = new BambooBuildJsonUnmarshaller();
 
   @Override
   public String getBuildUrl(String number) {
@@ -58,8 +61,37 @@ public class BambooServer extends AbstractServer {
     }
   }
 
+  /**
+   * Bamboo can not filter results on date.
+   */
+  @Override
+  public String getBuildsUrl(Date since, int start, int count) {
+    StringBuilder sb = new StringBuilder(getHost())
+      .append("/rest/api/latest/result/").append(getKey())
+      .append("?os_authType=basic")
+      .append("&expand=results.result")
+      .append("&max-result=").append(count)
+      .append("&start-index=").append(start);
+    return sb.toString();
+  }
+
+  @Override
+  public String getBuildsElementName() {
+    return "result";
+  }
+
+  @Override
+  public String getBuildsArrayName() {
+    return "result";
+  }
+
   @Override
   public Unmarshaller<Build> getBuildUnmarshaller() {
     return BUILD_UNMARSHALLER;
   }
+
+  @Override
+  public JsonUnmarshaller<Build> getBuildJsonUnmarshaller() {
+    return BUILD_JSON_UNMARSHALLER;
+  }
 }
@@ -0,0 +1,63 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci.jenkins;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.sonar.plugins.buildstability.ci.api.Build;
+import org.sonar.plugins.buildstability.ci.api.JsonUnmarshaller;
+
+import java.io.IOException;
+
+/**
+ * Reads the same fields as {@link JenkinsBuildUnmarshaller}, from the <code>/api/json</code> representation of a build.
+ */
+public class JenkinsBuildJsonUnmarshaller implements JsonUnmarshaller<Build> {
+
+  @Override
+  public Build toModel(JsonReader reader) throws IOException {
+    Build build = new Build();
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull();
+      } else if ("number".equals(name)) {
+        build.setNumber(reader.nextInt());
+      } else if ("timestamp".equals(name)) {
+        build.setTimestamp(reader.nextLong());
+      } else if ("result".equals(name)) {
+        String result = reader.nextString();
+        build.setResult(result);
+        build.setSuccessful("SUCCESS".equalsIgnoreCase(result));
+      } else if ("duration".equals(name)) {
+        build.setDuration(reader.nextLong());
+      } else if ("building".equals(name)) {
+        build.setBuilding(reader.nextBoolean());
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    return build;
+  }
+}
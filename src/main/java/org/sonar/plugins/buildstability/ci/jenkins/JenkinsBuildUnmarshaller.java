@@ -38,6 +38,7 @@ public class JenkinsBuildUnmarshaller implements Unmarshaller<Build> {
     build.setResult(result);
     build.setDuration(Long.parseLong(domElement.elementText("duration")));
     build.setSuccessful("SUCCESS".equalsIgnoreCase(result));
+    build.setBuilding("true".equals(domElement.elementText("building")));
 
     return build;
   }
@@ -20,12 +20,20 @@
 package org.sonar.plugins.buildstability.ci.jenkins;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.http.cookie.Cookie;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.plugins.buildstability.ci.api.AbstractServer;
 import org.sonar.plugins.buildstability.ci.api.Build;
+import org.sonar.plugins.buildstability.ci.api.JsonUnmarshaller;
 import org.sonar.plugins.buildstability.ci.api.Unmarshaller;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Date;
+import java.util.List;
 
 /**
  * See <a href="https://wiki.jenkins-ci.org/display/JENKINS/Remote+access+API">Jenkins Remote access API</a>.
@@ -35,14 +43,22 @@ import java.io.IOException;
 public class JenkinsServer extends AbstractServer {
   public static final String SYSTEM = "Jenkins";
   public static final String PATTERN = "/job/";
+  private static final String BUILDS_TREE = "allBuilds[number,timestamp,result,duration,building]";
 
+  private static final Logger LOG = LoggerFactory.getLogger(JenkinsServer.class);
   private static final Unmarshaller<Build> BUILD_UNMARSHALLER = new JenkinsBuildUnmarshaller();
+  private static final JsonUnmarshaller<Build> BUILD_JSON_UNMARSHALLER = new JenkinsBuildJsonUnmarshaller();
+
+  /**
+   * A login renewed this recently is assumed to be valid.
+   */
+  private static final long RENEWED_LOGIN_DELAY = 10 * 1000L;
 
   private boolean useJSecurityCheck;
 
   @Override
   public String getBuildUrl(String number) {
-    return getHost() + "/job/" + getKey() + "/" + number + "/api/xml/";
+    return getHost() + "/job/" + getKey() + "/" + number + "/api/" + getFormat() + "/";
   }
 
   @Override
@@ -50,11 +66,47 @@ public class JenkinsServer extends AbstractServer {
     return getBuildUrl("lastBuild");
   }
 
+  /**
+   * Uses the <code>tree</code> parameter with a range, so that only the fields required by
+   * {@link JenkinsBuildUnmarshaller} are sent for the requested builds. Jenkins can not filter builds on date.
+   */
+  @Override
+  public String getBuildsUrl(Date since, int start, int count) {
+    try {
+      String tree = BUILDS_TREE + "{" + start + "," + (start + count) + "}";
+      return getHost() + "/job/" + getKey() + "/api/" + getFormat() + "?tree=" + URLEncoder.encode(tree, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public String getBuildsElementName() {
+    return "allBuild";
+  }
+
+  @Override
+  public String getBuildsArrayName() {
+    return "allBuilds";
+  }
+
   @Override
   public Unmarshaller<Build> getBuildUnmarshaller() {
     return BUILD_UNMARSHALLER;
   }
 
+  @Override
+  public JsonUnmarshaller<Build> getBuildJsonUnmarshaller() {
+    return BUILD_JSON_UNMARSHALLER;
+  }
+
+  private String getFormat() {
+    return isUseJson() ? "json" : "xml";
+  }
+
+  /**
+   * With form login, the session opened by a previous connector or analysis is reused if its cookies are still valid.
+   */
   @Override
   public void doLogin(DefaultHttpClient client) throws IOException {
     if (!isUseJSecurityCheck()) {
@@ -62,8 +114,53 @@ public class JenkinsServer extends AbstractServer {
       return;
     }
     if (!StringUtils.isBlank(getUsername()) && !StringUtils.isBlank(getPassword())) {
-      JenkinsUtils.doLogin(client, getHost(), getUsername(), getPassword());
+      List<Cookie> cookies = JenkinsSessions.get(getCacheDirectory(), getHost(), getUsername());
+      if (cookies == null) {
+        login(client);
+      } else {
+        LOG.debug("Reusing Jenkins session of {} on {}", getUsername(), getHost());
+        for (Cookie cookie : cookies) {
+          client.getCookieStore().addCookie(cookie);
+        }
+      }
+    }
+  }
+
+  /**
+   * Logs in again, unless another connector just did, in which case its session is taken.
+   */
+  @Override
+  public boolean renewLogin(DefaultHttpClient client) throws IOException {
+    if (!isUseJSecurityCheck() || StringUtils.isBlank(getUsername()) || StringUtils.isBlank(getPassword())) {
+      return false;
     }
+    synchronized (JenkinsServer.class) {
+      client.getCookieStore().clear();
+      List<Cookie> cookies = JenkinsSessions.get(getCacheDirectory(), getHost(), getUsername());
+      if (cookies != null && JenkinsSessions.isOpenedSince(getHost(), getUsername(), System.currentTimeMillis() - RENEWED_LOGIN_DELAY)) {
+        for (Cookie cookie : cookies) {
+          client.getCookieStore().addCookie(cookie);
+        }
+        return true;
+      }
+      LOG.info("Jenkins session of {} on {} has expired, logging in again", getUsername(), getHost());
+      JenkinsSessions.remove(getCacheDirectory(), getHost(), getUsername());
+      login(client);
+      return true;
+    }
+  }
+
+  private void login(DefaultHttpClient client) throws IOException {
+    JenkinsUtils.doLogin(client, getHost(), getUsername(), getPassword());
+    JenkinsSessions.put(getCacheDirectory(), getHost(), getUsername(), client.getCookieStore().getCookies());
+  }
+
+  /**
+   * Form login sets a session cookie instead of credentials.
+   */
+  @Override
+  public boolean isPreemptiveAuthentication() {
+    return !isUseJSecurityCheck() && super.isPreemptiveAuthentication();
   }
 
   public boolean isUseJSecurityCheck() {
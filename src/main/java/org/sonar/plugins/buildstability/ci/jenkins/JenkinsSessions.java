@@ -0,0 +1,217 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci.jenkins;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.CharEncoding;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cookies of Jenkins sessions opened with form login, shared by the connectors of the JVM, and kept in a directory
+ * between analyses when one is given, in a file readable by its owner only.
+ *
+ * @see JenkinsUtils#doLogin(org.apache.http.client.HttpClient, String, String, String)
+ */
+final class JenkinsSessions {
+  private static final Logger LOG = LoggerFactory.getLogger(JenkinsSessions.class);
+  private static final String ENCODING = CharEncoding.UTF_8;
+  private static final String SEPARATOR = "\t";
+
+  private static final ConcurrentMap<String, List<Cookie>> SESSIONS = new ConcurrentHashMap<String, List<Cookie>>();
+  private static final ConcurrentMap<String, Long> LOGIN_TIMES = new ConcurrentHashMap<String, Long>();
+
+  /**
+   * Hide utility-class constructor.
+   */
+  private JenkinsSessions() {
+  }
+
+  /**
+   * @return <code>null</code> if there is no session, or if its cookies have expired
+   */
+  @CheckForNull
+  static List<Cookie> get(@Nullable File directory, String host, String username) {
+    String key = getKey(host, username);
+    List<Cookie> cookies = SESSIONS.get(key);
+    if (cookies == null && directory != null) {
+      cookies = read(getFile(directory, key));
+    }
+    if (cookies == null) {
+      return null;
+    }
+    Date now = new Date();
+    List<Cookie> valid = new ArrayList<Cookie>();
+    for (Cookie cookie : cookies) {
+      if (!cookie.isExpired(now)) {
+        valid.add(cookie);
+      }
+    }
+    if (valid.isEmpty()) {
+      SESSIONS.remove(key);
+      return null;
+    }
+    SESSIONS.put(key, valid);
+    return valid;
+  }
+
+  static void put(@Nullable File directory, String host, String username, List<Cookie> cookies) {
+    String key = getKey(host, username);
+    SESSIONS.put(key, new ArrayList<Cookie>(cookies));
+    LOGIN_TIMES.put(key, System.currentTimeMillis());
+    if (directory != null) {
+      write(getFile(directory, key), cookies);
+    }
+  }
+
+  static void remove(@Nullable File directory, String host, String username) {
+    String key = getKey(host, username);
+    SESSIONS.remove(key);
+    LOGIN_TIMES.remove(key);
+    if (directory != null) {
+      FileUtils.deleteQuietly(getFile(directory, key));
+    }
+  }
+
+  /**
+   * @return <code>true</code> if the session was opened by this JVM after the given time
+   */
+  static boolean isOpenedSince(String host, String username, long time) {
+    Long loginTime = LOGIN_TIMES.get(getKey(host, username));
+    return loginTime != null && loginTime >= time;
+  }
+
+  @VisibleForTesting
+  static void clear() {
+    SESSIONS.clear();
+    LOGIN_TIMES.clear();
+  }
+
+  private static String getKey(String host, String username) {
+    return host + "\n" + username;
+  }
+
+  private static File getFile(File directory, String key) {
+    return new File(directory, "jenkins-session-" + DigestUtils.md5Hex(key) + ".txt");
+  }
+
+  /**
+   * Each line holds the name, value, domain, path and expiry date of a cookie, and nothing else is read.
+   */
+  @CheckForNull
+  private static List<Cookie> read(File file) {
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      List<Cookie> cookies = new ArrayList<Cookie>();
+      for (String line : FileUtils.readLines(file, ENCODING)) {
+        Cookie cookie = parseCookie(line);
+        if (cookie == null) {
+          LOG.debug("Ignoring invalid Jenkins session {}", file);
+          return null;
+        }
+        cookies.add(cookie);
+      }
+      return cookies;
+    } catch (IOException e) {
+      LOG.debug("Unable to read Jenkins session " + file, e);
+      return null;
+    }
+  }
+
+  @CheckForNull
+  private static Cookie parseCookie(String line) {
+    String[] fields = StringUtils.splitPreserveAllTokens(line, SEPARATOR);
+    if (fields.length != 5 || fields[0].isEmpty()) {
+      return null;
+    }
+    BasicClientCookie cookie = new BasicClientCookie(fields[0], fields[1]);
+    cookie.setDomain(StringUtils.defaultIfEmpty(fields[2], null));
+    cookie.setPath(StringUtils.defaultIfEmpty(fields[3], null));
+    if (!fields[4].isEmpty()) {
+      try {
+        cookie.setExpiryDate(new Date(Long.parseLong(fields[4])));
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+    return cookie;
+  }
+
+  private static String formatCookie(Cookie cookie) {
+    Date expiryDate = cookie.getExpiryDate();
+    return StringUtils.join(new Object[] {
+      cookie.getName(),
+      cookie.getValue(),
+      StringUtils.defaultString(cookie.getDomain()),
+      StringUtils.defaultString(cookie.getPath()),
+      expiryDate == null ? "" : String.valueOf(expiryDate.getTime())
+    }, SEPARATOR);
+  }
+
+  /**
+   * Cookies open a session on behalf of the user, so the file is readable by its owner only, before they are written.
+   */
+  private static void write(File file, List<Cookie> cookies) {
+    List<String> lines = new ArrayList<String>(cookies.size());
+    for (Cookie cookie : cookies) {
+      String line = formatCookie(cookie);
+      if (StringUtils.countMatches(line, SEPARATOR) != 4 || StringUtils.containsAny(line, "\r\n")) {
+        LOG.debug("Not keeping cookie {} of Jenkins session", cookie.getName());
+        continue;
+      }
+      lines.add(line);
+    }
+    try {
+      FileUtils.forceMkdir(file.getParentFile());
+      FileUtils.deleteQuietly(file);
+      if (!file.createNewFile() || !restrictToOwner(file)) {
+        LOG.warn("Unable to restrict access to {}, Jenkins session is not kept", file);
+        FileUtils.deleteQuietly(file);
+        return;
+      }
+      FileUtils.writeLines(file, ENCODING, lines);
+    } catch (IOException e) {
+      LOG.warn("Unable to write Jenkins session " + file, e);
+    }
+  }
+
+  private static boolean restrictToOwner(File file) {
+    return file.setReadable(false, false) && file.setReadable(true, true)
+      && file.setWritable(false, false) && file.setWritable(true, true);
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci.teamcity;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.sonar.plugins.buildstability.ci.api.Build;
+import org.sonar.plugins.buildstability.ci.api.JsonUnmarshaller;
+
+import java.io.IOException;
+
+/**
+ * Reads the same fields as {@link TeamCityBuildUnmarshaller}, from the JSON representation of a build.
+ */
+public class TeamCityBuildJsonUnmarshaller implements JsonUnmarshaller<Build> {
+
+  @Override
+  public Build toModel(JsonReader reader) throws IOException {
+    String number = null;
+    String status = null;
+    boolean running = false;
+    String startDate = null;
+    String finishDate = null;
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull();
+      } else if ("number".equals(name)) {
+        number = reader.nextString();
+      } else if ("status".equals(name)) {
+        status = reader.nextString();
+      } else if ("running".equals(name)) {
+        running = reader.nextBoolean();
+      } else if ("startDate".equals(name)) {
+        startDate = reader.nextString();
+      } else if ("finishDate".equals(name)) {
+        finishDate = reader.nextString();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    if (number == null || startDate == null) {
+      // Builds listed by TeamCity prior to 8.1
+      return null;
+    }
+    Build build = new Build();
+    build.setNumber(Integer.parseInt(number));
+    TeamCityBuildUnmarshaller.setDates(build, startDate, finishDate);
+    build.setResult(status);
+    build.setSuccessful("SUCCESS".equalsIgnoreCase(status));
+    build.setBuilding(running);
+    return build;
+  }
+}
@@ -23,11 +23,10 @@ import org.dom4j.Element;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.plugins.buildstability.ci.api.Build;
+import org.sonar.plugins.buildstability.ci.api.TimestampParser;
 import org.sonar.plugins.buildstability.ci.api.Unmarshaller;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import javax.annotation.Nullable;
 
 /**
  * @author Alexei Guevara <alguevara@kijiji.ca>
@@ -39,47 +38,45 @@ public class TeamCityBuildUnmarshaller implements Unmarshaller<Build> {
   /**
    * TeamCity date-time format. Example: 20131124T053500+0000
    */
-  private static final String DATE_TIME_FORMAT = "yyyyMMdd'T'HHmmssZ";
+  static final String DATE_TIME_FORMAT = "yyyyMMdd'T'HHmmssZ";
 
   @Override
   public Build toModel(Element domElement) {
+    if (domElement.element("startDate") == null) {
+      // Builds listed by TeamCity prior to 8.1
+      return null;
+    }
     Build build = new Build();
 
     String result = domElement.attributeValue("status");
 
     build.setNumber(Integer.parseInt(domElement.attributeValue("number")));
-    build.setTimestamp(getTimeStamp(domElement.elementText("startDate")));
+    setDates(build, domElement.elementText("startDate"), domElement.elementText("finishDate"));
     build.setResult(result);
-    build.setDuration(calculateDuration(domElement.elementText("startDate"), domElement.elementText("finishDate")));
     build.setSuccessful("SUCCESS".equalsIgnoreCase(result));
+    build.setBuilding("true".equals(domElement.attributeValue("running")));
 
     return build;
   }
 
-  private long getTimeStamp(String startDate) {
-    Date start = parseDate(startDate);
-    return start == null ? 0 : start.getTime();
-  }
-
-  private double calculateDuration(String startDate, String endDate) {
-    Date start = parseDate(startDate);
-    Date end = parseDate(endDate);
-
-    if (start == null || end == null) {
-      return 0;
-    } else {
-      return end.getTime() - start.getTime();
-    }
-  }
-
-  private Date parseDate(String date) {
-    SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_TIME_FORMAT);
+  /**
+   * Sets the timestamp and the duration of the build, leaving them to 0 when a date can not be parsed.
+   */
+  static void setDates(Build build, String startDate, @Nullable String finishDate) {
+    long start;
     try {
-      return dateFormat.parse(date);
-    } catch (ParseException e) {
-      LOG.warn("Unable to parse date {}. Expected format is {}", date, DATE_TIME_FORMAT);
-      return null;
+      start = TimestampParser.parse(startDate);
+    } catch (IllegalArgumentException e) {
+      LOG.warn("Unable to parse date {}. Expected format is {}", startDate, DATE_TIME_FORMAT);
+      return;
+    }
+    build.setTimestamp(start);
+    if (finishDate != null) {
+      try {
+        build.setDuration(TimestampParser.parse(finishDate) - start);
+      } catch (IllegalArgumentException e) {
+        LOG.warn("Unable to parse date {}. Expected format is {}", finishDate, DATE_TIME_FORMAT);
+      }
     }
   }
-
 }
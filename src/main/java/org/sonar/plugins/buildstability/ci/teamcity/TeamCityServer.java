@@ -25,9 +25,14 @@ import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.sonar.plugins.buildstability.ci.api.AbstractServer;
 import org.sonar.plugins.buildstability.ci.api.Build;
+import org.sonar.plugins.buildstability.ci.api.JsonUnmarshaller;
 import org.sonar.plugins.buildstability.ci.api.Unmarshaller;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 
 /**
  * See <a href="http://confluence.jetbrains.com/display/TW/REST+API+Plugin#RESTAPIPlugin-Usage">TeamCity REST APIs</a>.
@@ -38,6 +43,8 @@ public class TeamCityServer extends AbstractServer {
   public static final String SYSTEM = "TeamCity";
   public static final String PATTERN = "/viewType.html?buildTypeId=";
   private static final Unmarshaller<Build> BUILD_UNMARSHALLER = new TeamCityBuildUnmarshaller();
+  private static final JsonUnmarshaller<Build> BUILD_JSON_UNMARSHALLER = new TeamCityBuildJsonUnmarshaller();
+  private static final String BUILDS_FIELDS = "build(number,status,running,startDate,finishDate)";
 
   @Override
   public String getBuildUrl(String number) {
@@ -53,11 +60,45 @@ public class TeamCityServer extends AbstractServer {
     return sb.toString();
   }
 
+  /**
+   * Requires TeamCity 8.1+ for the <code>fields</code> parameter, older versions do not send the dates of listed builds.
+   */
+  @Override
+  public String getBuildsUrl(Date since, int start, int count) {
+    String locator = "sinceDate:" + new SimpleDateFormat(TeamCityBuildUnmarshaller.DATE_TIME_FORMAT).format(since)
+      + ",count:" + count
+      + ",start:" + start;
+    try {
+      StringBuilder sb = new StringBuilder(getHost())
+        .append("/httpAuth/app/rest/buildTypes/id:").append(getKey()).append("/builds")
+        .append("?locator=").append(URLEncoder.encode(locator, "UTF-8"))
+        .append("&fields=").append(URLEncoder.encode(BUILDS_FIELDS, "UTF-8"));
+      return sb.toString();
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public String getBuildsElementName() {
+    return "build";
+  }
+
+  @Override
+  public String getBuildsArrayName() {
+    return "build";
+  }
+
   @Override
   public Unmarshaller<Build> getBuildUnmarshaller() {
     return BUILD_UNMARSHALLER;
   }
 
+  @Override
+  public JsonUnmarshaller<Build> getBuildJsonUnmarshaller() {
+    return BUILD_JSON_UNMARSHALLER;
+  }
+
   @Override
   public void doLogin(DefaultHttpClient client) throws IOException {
     Credentials credentials = new UsernamePasswordCredentials(getUsername(), getPassword());
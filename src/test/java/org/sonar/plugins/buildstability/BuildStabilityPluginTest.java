@@ -38,6 +38,6 @@ public class BuildStabilityPluginTest {
 
   @Test
   public void testGetExtensions() throws Exception {
-    assertThat(plugin.getExtensions().size(), is(4));
+    assertThat(plugin.getExtensions().size(), is(5));
   }
 }
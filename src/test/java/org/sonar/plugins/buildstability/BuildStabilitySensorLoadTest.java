@@ -0,0 +1,216 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.config.PropertyDefinitions;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Project;
+import org.sonar.api.test.IsMeasure;
+import org.sonar.plugins.buildstability.ci.CiConnectionPool;
+import org.sonar.plugins.buildstability.ci.SimulatedCiServer;
+import org.sonar.plugins.buildstability.ci.api.Build;
+import org.sonar.plugins.buildstability.ci.bamboo.BambooServer;
+import org.sonar.plugins.buildstability.ci.jenkins.JenkinsServer;
+import org.sonar.plugins.buildstability.ci.teamcity.TeamCityServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the sensor end-to-end against {@link SimulatedCiServer simulated CI servers}, and logs the time it takes, the
+ * number of requests it sends and the bytes it receives. Small histories and latencies keep it part of the build, larger
+ * ones are given with system properties, e.g.
+ * <code>mvn test -Dtest=BuildStabilitySensorLoadTest -Dloadtest.builds=5000 -Dloadtest.latency=50 -Dloadtest.jitter=50</code>.
+ */
+public class BuildStabilitySensorLoadTest {
+  private static final Logger LOG = LoggerFactory.getLogger(BuildStabilitySensorLoadTest.class);
+
+  private static final int BUILDS = Integer.getInteger("loadtest.builds", 300);
+  private static final long LATENCY = Long.getLong("loadtest.latency", 5L);
+  private static final long JITTER = Long.getLong("loadtest.jitter", 5L);
+  private static final double ERROR_RATE = Double.parseDouble(System.getProperty("loadtest.errorRate", "0.02"));
+  private static final double GAP_RATE = Double.parseDouble(System.getProperty("loadtest.gapRate", "0.05"));
+  private static final int FETCH_THREADS = Integer.getInteger("loadtest.fetchThreads", 5);
+
+  /**
+   * Builds older than the analysed period, which must not be counted.
+   */
+  private static final int OLD_BUILDS = 20;
+  private static final long DAY = 24 * 60 * 60 * 1000L;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private Settings settings = new Settings(new PropertyDefinitions(BuildStabilityPlugin.class));
+  private CiConnectionPool connectionPool;
+  private BuildStabilitySensor sensor;
+  private SimulatedCiServer server;
+  private List<Build> builds;
+  private int failed;
+
+  @Before
+  public void setUp() throws Exception {
+    settings.setProperty(CiConnectionPool.MAX_CONNECTIONS_PER_ROUTE_PROPERTY, FETCH_THREADS);
+    connectionPool = new CiConnectionPool(settings);
+    FileSystem fileSystem = mock(FileSystem.class);
+    when(fileSystem.workDir()).thenReturn(temp.getRoot());
+    sensor = new BuildStabilitySensor(settings, fileSystem, connectionPool);
+    builds = generateHistory(new Random(42));
+  }
+
+  @After
+  public void tearDown() {
+    if (server != null) {
+      server.stop();
+    }
+    connectionPool.stop();
+  }
+
+  @Test
+  public void listJenkinsBuilds() throws Exception {
+    analyse(JenkinsServer.SYSTEM, true, false);
+  }
+
+  @Test
+  public void listJenkinsBuildsInJson() throws Exception {
+    analyse(JenkinsServer.SYSTEM, true, true);
+  }
+
+  @Test
+  public void fetchJenkinsBuilds() throws Exception {
+    analyse(JenkinsServer.SYSTEM, false, false);
+  }
+
+  @Test
+  public void listBambooBuilds() throws Exception {
+    analyse(BambooServer.SYSTEM, true, false);
+  }
+
+  @Test
+  public void listBambooBuildsInJson() throws Exception {
+    analyse(BambooServer.SYSTEM, true, true);
+  }
+
+  @Test
+  public void fetchBambooBuilds() throws Exception {
+    analyse(BambooServer.SYSTEM, false, true);
+  }
+
+  @Test
+  public void listTeamCityBuilds() throws Exception {
+    analyse(TeamCityServer.SYSTEM, true, false);
+  }
+
+  @Test
+  public void listTeamCityBuildsInJson() throws Exception {
+    analyse(TeamCityServer.SYSTEM, true, true);
+  }
+
+  @Test
+  public void fetchTeamCityBuilds() throws Exception {
+    analyse(TeamCityServer.SYSTEM, false, false);
+  }
+
+  /**
+   * Failed requests are retried, often enough for all builds to be retrieved.
+   */
+  @Test
+  public void fetchBuildsFromFailingServer() throws Exception {
+    settings.setProperty(BuildStabilitySensor.MAX_RETRIES_PROPERTY, 5);
+    analyse(JenkinsServer.SYSTEM, false, false, ERROR_RATE);
+  }
+
+  private void analyse(String system, boolean listBuilds, boolean useJson) throws Exception {
+    analyse(system, listBuilds, useJson, 0);
+  }
+
+  private void analyse(String system, boolean listBuilds, boolean useJson, double errorRate) throws Exception {
+    server = new SimulatedCiServer(system, builds);
+    server.setLatency(LATENCY);
+    server.setJitter(JITTER);
+    server.setErrorRate(errorRate);
+    server.setListBuilds(listBuilds);
+    server.start();
+    settings.setProperty(BuildStabilitySensor.CI_URL_PROPERTY, server.getUrl());
+    if (TeamCityServer.SYSTEM.equals(system)) {
+      // TeamCity is always accessed with credentials
+      settings.setProperty(BuildStabilitySensor.USERNAME_PROPERTY, "user");
+      settings.setProperty(BuildStabilitySensor.PASSWORD_PROPERTY, "password");
+    }
+    settings.setProperty(BuildStabilitySensor.USE_JSON_PROPERTY, useJson);
+    settings.setProperty(BuildStabilitySensor.FETCH_THREADS_PROPERTY, listBuilds ? 1 : FETCH_THREADS);
+    SensorContext context = mock(SensorContext.class);
+
+    long start = System.nanoTime();
+    sensor.analyse(mock(Project.class), context);
+    long time = (System.nanoTime() - start) / 1000000;
+
+    LOG.info("{} {} builds {}: {} builds in {} ms, {} requests ({} failed), {} bytes", new Object[] {
+      system, listBuilds ? "listed" : "fetched", useJson ? "in JSON" : "in XML", builds.size() - OLD_BUILDS, time,
+      server.getRequests(), server.getErrors(), server.getBytes()});
+    if (listBuilds) {
+      // Builds are listed by pages, rather than retrieved one by one
+      assertThat(server.getRequests()).isLessThan(builds.size() / 10);
+    }
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.BUILDS, (double) (builds.size() - OLD_BUILDS))));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.FAILED, (double) failed)));
+  }
+
+  /**
+   * Builds of the last 20 days, after older ones, with missing numbers. About a fifth of the builds of the period fail.
+   */
+  private List<Build> generateHistory(Random random) {
+    List<Build> history = new ArrayList<Build>();
+    long now = System.currentTimeMillis();
+    int number = 0;
+    for (int i = 0; i < OLD_BUILDS + BUILDS; i++) {
+      number += random.nextDouble() < GAP_RATE ? 2 : 1;
+      long timestamp;
+      boolean successful;
+      if (i < OLD_BUILDS) {
+        timestamp = now - 45 * DAY + i * (5 * DAY / OLD_BUILDS);
+        successful = false;
+      } else {
+        timestamp = now - 20 * DAY + (i - OLD_BUILDS) * (20 * DAY / BUILDS);
+        successful = random.nextInt(5) != 0;
+        failed += successful ? 0 : 1;
+      }
+      long duration = 1000L * (60 + random.nextInt(600));
+      history.add(new Build(number, timestamp, successful ? "SUCCESS" : "FAILURE", successful, duration));
+    }
+    return history;
+  }
+}
@@ -20,20 +20,27 @@
 package org.sonar.plugins.buildstability;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.config.PropertyDefinitions;
 import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
 import org.sonar.api.test.IsMeasure;
+import org.sonar.plugins.buildstability.ci.BuildCache;
+import org.sonar.plugins.buildstability.ci.CiConnectionPool;
 import org.sonar.plugins.buildstability.ci.MavenCiConfiguration;
 import org.sonar.plugins.buildstability.ci.api.Build;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -47,14 +54,21 @@ import static org.mockito.Mockito.when;
  * @author Evgeny Mandrikov
  */
 public class BuildStabilitySensorTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
   private BuildStabilitySensor sensor;
   private MavenCiConfiguration mavenCiConfig;
+  private FileSystem fileSystem;
   private Settings settings = new Settings(new PropertyDefinitions(BuildStabilityPlugin.class));
+  private CiConnectionPool connectionPool = new CiConnectionPool(settings);
 
   @Before
   public void setUp() throws Exception {
     mavenCiConfig = mock(MavenCiConfiguration.class);
-    sensor = new BuildStabilitySensor(settings, mavenCiConfig);
+    fileSystem = mock(FileSystem.class);
+    when(fileSystem.workDir()).thenReturn(temp.getRoot());
+    sensor = new BuildStabilitySensor(settings, fileSystem, connectionPool, mavenCiConfig);
   }
 
   @Test
@@ -73,7 +87,7 @@ public class BuildStabilitySensorTest {
     assertFalse(sensor.shouldExecuteOnProject(project));
 
     // SONARPLUGINS-1603
-    BuildStabilitySensor sensorNoMaven = new BuildStabilitySensor(settings);
+    BuildStabilitySensor sensorNoMaven = new BuildStabilitySensor(settings, fileSystem, connectionPool);
     assertFalse(sensorNoMaven.shouldExecuteOnProject(project));
 
     settings.setProperty(BuildStabilitySensor.CI_URL_PROPERTY, "Hudson:http://localhost");
@@ -84,6 +98,28 @@ public class BuildStabilitySensorTest {
     assertTrue(sensor.shouldExecuteOnProject(project));
   }
 
+  @Test
+  public void testLoadBuildCache() throws Exception {
+    BuildCache cache = sensor.loadBuildCache("Jenkins:http://localhost/job/foo");
+    assertThat(cache.getFile().getParentFile(), is(new File(temp.getRoot(), "build-stability")));
+
+    File cacheDir = temp.newFolder();
+    settings.setProperty(BuildStabilitySensor.CACHE_DIR_PROPERTY, cacheDir.getAbsolutePath());
+    assertThat(sensor.loadBuildCache("Jenkins:http://localhost/job/foo").getFile().getParentFile(), is(cacheDir));
+
+    settings.setProperty(BuildStabilitySensor.CACHE_SIZE_PROPERTY, 0);
+    assertThat(sensor.loadBuildCache("Jenkins:http://localhost/job/foo"), nullValue());
+  }
+
+  @Test
+  public void testKeepSessionsOnlyInGivenDirectory() throws Exception {
+    assertThat(sensor.getSessionDirectory(), nullValue());
+
+    File cacheDir = temp.newFolder();
+    settings.setProperty(BuildStabilitySensor.CACHE_DIR_PROPERTY, cacheDir.getAbsolutePath());
+    assertThat(sensor.getSessionDirectory(), is(cacheDir));
+  }
+
   @Test
   public void testAnalyzeBuilds() throws Exception {
     SensorContext context = mock(SensorContext.class);
@@ -103,6 +139,10 @@ public class BuildStabilitySensorTest {
     verify(context).saveMeasure(argThat((new IsMeasure(BuildStabilityMetrics.AVG_DURATION, 6.0))));
     verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.SHORTEST_DURATION, 3.0)));
     verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_DURATION, 10.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.MEDIAN_DURATION, 5.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.P90_DURATION, 10.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.P95_DURATION, 10.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.P99_DURATION, 10.0)));
 
     verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_TIME_TO_FIX, 9.0)));
     verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_TIME_TO_FIX, 9.0)));
@@ -114,6 +154,28 @@ public class BuildStabilitySensorTest {
     verifyNoMoreInteractions(context);
   }
 
+  /**
+   * Builds retrieved most recent first, and twice for some of them, are analysed in order, and only once in the data.
+   */
+  @Test
+  public void testAnalyzeUnsortedBuilds() throws Exception {
+    SensorContext context = mock(SensorContext.class);
+    List<Build> builds = Arrays.asList(
+      new Build(10, 20, "Fake", true, 5),
+      new Build(3, 10, "Fake", true, 3),
+      new Build(2, 1, "Fake", false, 4),
+      new Build(10, 20, "Fake", true, 5),
+      new Build(1, 0, "Fake", true, 10)
+      );
+
+    sensor.analyseBuilds(builds, context);
+
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.BUILDS, 5.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_TIME_TO_FIX, 9.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.DURATIONS, "1=0.01;2=0.004;3=0.003;10=0.005")));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.RESULTS, "1=g;2=r;3=g;10=g")));
+  }
+
   @Test
   public void testNoSuccessfulBuilds() throws Exception {
     SensorContext context = mock(SensorContext.class);
@@ -130,6 +192,10 @@ public class BuildStabilitySensorTest {
     verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_DURATION, 0.0)));
     verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.SHORTEST_DURATION, 0.0)));
     verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_DURATION, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.MEDIAN_DURATION, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.P90_DURATION, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.P95_DURATION, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.P99_DURATION, 0.0)));
 
     verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_TIME_TO_FIX, 0.0)));
     verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_TIME_TO_FIX, 0.0)));
@@ -157,6 +223,10 @@ public class BuildStabilitySensorTest {
     verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_DURATION, 10.0)));
     verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.SHORTEST_DURATION, 10.0)));
     verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_DURATION, 10.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.MEDIAN_DURATION, 10.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.P90_DURATION, 10.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.P95_DURATION, 10.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.P99_DURATION, 10.0)));
 
     verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_TIME_TO_FIX, 0.0)));
     verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_TIME_TO_FIX, 0.0)));
@@ -182,6 +252,10 @@ public class BuildStabilitySensorTest {
     verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_DURATION, 0.0)));
     verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.SHORTEST_DURATION, 0.0)));
     verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_DURATION, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.MEDIAN_DURATION, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.P90_DURATION, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.P95_DURATION, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.P99_DURATION, 0.0)));
 
     verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_TIME_TO_FIX, 0.0)));
     verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_TIME_TO_FIX, 0.0)));
@@ -0,0 +1,148 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability;
+
+import org.junit.Test;
+import org.sonar.plugins.buildstability.ci.api.BuildHistory;
+
+import java.util.Random;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Delta.delta;
+
+public class BuildStatisticsTest {
+  @Test
+  public void testAdd() {
+    BuildStatistics statistics = new BuildStatistics();
+    statistics.add(1, 0, 10, true);
+    statistics.add(2, 1, 4, false);
+    statistics.add(3, 10, 3, true);
+    statistics.add(4, 20, 5, true);
+
+    assertThat(statistics.getCount()).isEqualTo(4);
+    assertThat(statistics.getFailed()).isEqualTo(1);
+    assertThat(statistics.getSuccessRate()).isEqualTo(75.0);
+    assertThat(statistics.getAverageDuration()).isEqualTo(6.0);
+    assertThat(statistics.getShortestDuration()).isEqualTo(3.0);
+    assertThat(statistics.getLongestDuration()).isEqualTo(10.0);
+    assertThat(statistics.getDurationPercentile(50)).isEqualTo(5.0);
+    assertThat(statistics.getDurationPercentile(99)).isEqualTo(10.0);
+    assertThat(statistics.getAverageTimeToFix()).isEqualTo(9.0);
+    assertThat(statistics.getLongestTimeToFix()).isEqualTo(9.0);
+    assertThat(statistics.getAverageBuildsToFix()).isEqualTo(1.0);
+  }
+
+  @Test
+  public void testNoBuilds() {
+    BuildStatistics statistics = new BuildStatistics();
+
+    assertThat(statistics.getCount()).isEqualTo(0);
+    assertThat(statistics.getSuccessRate()).isEqualTo(0.0);
+    assertThat(statistics.getAverageDuration()).isEqualTo(0.0);
+    assertThat(statistics.getShortestDuration()).isEqualTo(0.0);
+    assertThat(statistics.getLongestDuration()).isEqualTo(0.0);
+    assertThat(statistics.getAverageTimeToFix()).isEqualTo(0.0);
+    assertThat(statistics.getLongestTimeToFix()).isEqualTo(0.0);
+    assertThat(statistics.getAverageBuildsToFix()).isEqualTo(0.0);
+  }
+
+  /**
+   * Failures at the end of the first range are fixed in the second one, after failures it begins with.
+   */
+  @Test
+  public void testMergeFixAcrossRanges() {
+    BuildStatistics first = new BuildStatistics();
+    first.add(1, 0, 10, true);
+    first.add(2, 100, 10, false);
+    BuildStatistics second = new BuildStatistics();
+    second.add(3, 200, 10, false);
+    second.add(4, 250, 10, true);
+    second.add(5, 300, 10, false);
+
+    first.merge(second);
+
+    assertThat(first.getCount()).isEqualTo(5);
+    assertThat(first.getFailed()).isEqualTo(3);
+    assertThat(first.getAverageTimeToFix()).isEqualTo(150.0);
+    assertThat(first.getLongestTimeToFix()).isEqualTo(150.0);
+    assertThat(first.getAverageBuildsToFix()).isEqualTo(2.0);
+  }
+
+  @Test
+  public void testMergeEmpty() {
+    BuildStatistics statistics = new BuildStatistics();
+    statistics.add(1, 0, 10, false);
+    statistics.add(2, 10, 10, true);
+
+    BuildStatistics merged = new BuildStatistics().merge(statistics).merge(new BuildStatistics());
+
+    assertThat(merged.getCount()).isEqualTo(2);
+    assertThat(merged.getAverageTimeToFix()).isEqualTo(10.0);
+  }
+
+  /**
+   * Merging the statistics of any split of builds gives the statistics of all builds added one by one.
+   */
+  @Test
+  public void testMergeSplits() {
+    Random random = new Random(1);
+    for (int run = 0; run < 20; run++) {
+      BuildHistory builds = new BuildHistory();
+      int number = 0;
+      long timestamp = 0;
+      for (int i = 0; i < 50; i++) {
+        number += 1 + random.nextInt(2);
+        timestamp += random.nextInt(1000);
+        builds.add(number, timestamp, random.nextInt(100), random.nextInt(3) == 0 ? BuildHistory.FAILED : BuildHistory.SUCCESSFUL);
+      }
+      BuildStatistics expected = BuildStatistics.of(builds);
+
+      for (int split = 0; split <= builds.size(); split++) {
+        int secondSplit = split + random.nextInt(builds.size() - split + 1);
+        BuildStatistics merged = statistics(builds, 0, split)
+          .merge(statistics(builds, split, secondSplit).merge(statistics(builds, secondSplit, builds.size())));
+        assertSameStatistics(merged, expected);
+        merged = statistics(builds, 0, split).merge(statistics(builds, split, secondSplit)).merge(statistics(builds, secondSplit, builds.size()));
+        assertSameStatistics(merged, expected);
+      }
+    }
+  }
+
+  private static BuildStatistics statistics(BuildHistory builds, int from, int to) {
+    BuildStatistics statistics = new BuildStatistics();
+    for (int i = from; i < to; i++) {
+      statistics.add(builds.getNumber(i), builds.getTimestamp(i), builds.getDuration(i), builds.isSuccessful(i));
+    }
+    return statistics;
+  }
+
+  private static void assertSameStatistics(BuildStatistics actual, BuildStatistics expected) {
+    assertThat(actual.getCount()).isEqualTo(expected.getCount());
+    assertThat(actual.getFailed()).isEqualTo(expected.getFailed());
+    assertThat(actual.getAverageDuration()).isEqualTo(expected.getAverageDuration(), delta(1e-9));
+    assertThat(actual.getShortestDuration()).isEqualTo(expected.getShortestDuration());
+    assertThat(actual.getLongestDuration()).isEqualTo(expected.getLongestDuration());
+    assertThat(actual.getDurationPercentile(50)).isEqualTo(expected.getDurationPercentile(50));
+    assertThat(actual.getDurationPercentile(95)).isEqualTo(expected.getDurationPercentile(95));
+    assertThat(actual.getAverageTimeToFix()).isEqualTo(expected.getAverageTimeToFix(), delta(1e-9));
+    assertThat(actual.getLongestTimeToFix()).isEqualTo(expected.getLongestTimeToFix());
+    assertThat(actual.getAverageBuildsToFix()).isEqualTo(expected.getAverageBuildsToFix(), delta(1e-9));
+  }
+}
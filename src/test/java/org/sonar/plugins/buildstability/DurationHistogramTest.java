@@ -0,0 +1,114 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Delta.delta;
+
+public class DurationHistogramTest {
+  @Test
+  public void testNoDurations() {
+    DurationHistogram histogram = new DurationHistogram();
+
+    assertThat(histogram.getCount()).isEqualTo(0);
+    assertThat(histogram.getPercentile(50)).isEqualTo(0.0);
+  }
+
+  @Test
+  public void testShortDurationsAreExact() {
+    DurationHistogram histogram = new DurationHistogram();
+    for (int duration = 1; duration <= 100; duration++) {
+      histogram.add(duration);
+    }
+
+    assertThat(histogram.getPercentile(0)).isEqualTo(1.0);
+    assertThat(histogram.getPercentile(50)).isEqualTo(50.0);
+    assertThat(histogram.getPercentile(90)).isEqualTo(90.0);
+    assertThat(histogram.getPercentile(99)).isEqualTo(99.0);
+    assertThat(histogram.getPercentile(100)).isEqualTo(100.0);
+  }
+
+  @Test
+  public void testOutOfRangeDurations() {
+    DurationHistogram histogram = new DurationHistogram();
+    histogram.add(-10);
+    histogram.add(1e12);
+
+    assertThat(histogram.getPercentile(50)).isEqualTo(0.0);
+    assertThat(histogram.getPercentile(100)).isEqualTo(Integer.MAX_VALUE, delta(Integer.MAX_VALUE * 0.004));
+  }
+
+  @Test
+  public void testBuckets() {
+    int previous = -1;
+    for (int value : new int[] {0, 255, 256, 258, 511, 512, 1000, 65535, 1 << 20, Integer.MAX_VALUE}) {
+      int bucket = DurationHistogram.bucket(value);
+      assertThat(bucket).isGreaterThan(previous);
+      assertThat(DurationHistogram.value(bucket)).isEqualTo(value, delta(value / 256.0));
+      previous = bucket;
+    }
+    assertThat(DurationHistogram.bucket(Integer.MAX_VALUE)).isEqualTo(3199);
+  }
+
+  /**
+   * Percentiles of durations spread over several orders of magnitude are within 0.4% of the exact ones.
+   */
+  @Test
+  public void testPercentilesOfLongDurations() {
+    Random random = new Random(1);
+    double[] durations = new double[10000];
+    DurationHistogram histogram = new DurationHistogram();
+    for (int i = 0; i < durations.length; i++) {
+      durations[i] = Math.round(Math.exp(8 + random.nextGaussian() * 1.5));
+      histogram.add(durations[i]);
+    }
+    Arrays.sort(durations);
+
+    for (double percentile : new double[] {50, 90, 95, 99}) {
+      double exact = durations[(int) Math.ceil(percentile / 100 * durations.length) - 1];
+      assertThat(histogram.getPercentile(percentile)).isEqualTo(exact, delta(exact * 0.004));
+    }
+  }
+
+  @Test
+  public void testMerge() {
+    DurationHistogram first = new DurationHistogram();
+    DurationHistogram second = new DurationHistogram();
+    DurationHistogram all = new DurationHistogram();
+    Random random = new Random(1);
+    for (int i = 0; i < 1000; i++) {
+      double duration = random.nextInt(1000000);
+      (i % 3 == 0 ? first : second).add(duration);
+      all.add(duration);
+    }
+
+    first.merge(second);
+
+    assertThat(first.getCount()).isEqualTo(1000);
+    for (double percentile : new double[] {50, 90, 95, 99}) {
+      assertThat(first.getPercentile(percentile)).isEqualTo(all.getPercentile(percentile));
+    }
+  }
+}
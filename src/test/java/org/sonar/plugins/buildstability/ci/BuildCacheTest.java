@@ -0,0 +1,146 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.plugins.buildstability.ci.api.Build;
+
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BuildCacheTest {
+  private static final String CI_URL = "Jenkins:http://localhost/job/foo";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void testSaveAndLoad() throws Exception {
+    File directory = temp.newFolder();
+    BuildCache cache = BuildCache.load(directory, CI_URL, 10);
+    assertThat(cache.size()).isEqualTo(0);
+
+    cache.put(new Build(3, 3000, "SUCCESS", true, 30));
+    cache.put(new Build(2, 2000, null, false, 20));
+    cache.putMissing(1);
+    assertThat(cache.contains(1)).isTrue();
+    assertThat(cache.get(1)).isNull();
+    cache.save();
+
+    cache = BuildCache.load(directory, CI_URL, 10);
+    assertThat(cache.size()).isEqualTo(2);
+    Build build = cache.get(3);
+    assertThat(build.getNumber()).isEqualTo(3);
+    assertThat(build.getTimestamp()).isEqualTo(3000);
+    assertThat(build.getResult()).isEqualTo("SUCCESS");
+    assertThat(build.isSuccessful()).isTrue();
+    assertThat(build.getDuration()).isEqualTo(30.0);
+    assertThat(cache.get(2).getResult()).isNull();
+    assertThat(cache.get(2).isSuccessful()).isFalse();
+    // Missing build numbers are requested again by the next analysis
+    assertThat(cache.contains(1)).isFalse();
+    assertThat(cache.contains(4)).isFalse();
+
+    assertThat(BuildCache.load(directory, "Jenkins:http://localhost/job/bar", 10).size()).isEqualTo(0);
+  }
+
+  @Test
+  public void testIgnoreUnfinishedBuilds() throws Exception {
+    BuildCache cache = BuildCache.load(temp.newFolder(), CI_URL, 10);
+    Build build = new Build(1, 1000, null, false, 0);
+    build.setBuilding(true);
+
+    cache.put(build);
+
+    assertThat(cache.contains(1)).isFalse();
+  }
+
+  @Test
+  public void testEvictOldestBuilds() throws Exception {
+    File directory = temp.newFolder();
+    BuildCache cache = BuildCache.load(directory, CI_URL, 2);
+    cache.put(new Build(1, 1000, "SUCCESS", true, 10));
+    cache.put(new Build(3, 3000, "SUCCESS", true, 10));
+    cache.put(new Build(2, 2000, "SUCCESS", true, 10));
+    cache.save();
+
+    cache = BuildCache.load(directory, CI_URL, 2);
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.contains(1)).isFalse();
+    assertThat(cache.contains(2)).isTrue();
+    assertThat(cache.contains(3)).isTrue();
+  }
+
+  @Test
+  public void testIgnoreCorruptedFile() throws Exception {
+    File directory = temp.newFolder();
+    BuildCache cache = BuildCache.load(directory, CI_URL, 10);
+    FileUtils.writeStringToFile(cache.getFile(), "corrupted");
+
+    assertThat(BuildCache.load(directory, CI_URL, 10).size()).isEqualTo(0);
+  }
+
+  @Test
+  public void testSyncState() throws Exception {
+    File directory = temp.newFolder();
+    BuildCache cache = BuildCache.load(directory, CI_URL, 10);
+    assertThat(cache.isSyncedSince(new Date(1000))).isFalse();
+
+    cache.put(new Build(1, 1000, "SUCCESS", true, 10));
+    cache.putMissing(2);
+    cache.put(new Build(3, 3000, "SUCCESS", true, 10));
+    cache.put(new Build(4, 4000, "SUCCESS", true, 10));
+    cache.setSynced(new Date(500), 3);
+    cache.save();
+
+    cache = BuildCache.load(directory, CI_URL, 10);
+    assertThat(cache.getSyncedNumber()).isEqualTo(3);
+    assertThat(cache.isSyncedSince(new Date(500))).isTrue();
+    assertThat(cache.isSyncedSince(new Date(400))).isFalse();
+    List<Build> builds = cache.getBuilds(3);
+    assertThat(builds).hasSize(2);
+    assertThat(builds.get(0).getNumber()).isEqualTo(3);
+    assertThat(builds.get(1).getNumber()).isEqualTo(1);
+
+    cache.evictBefore(new Date(2000));
+    assertThat(cache.contains(1)).isFalse();
+    assertThat(cache.contains(2)).isFalse();
+    assertThat(cache.contains(3)).isTrue();
+    assertThat(cache.isSyncedSince(new Date(1000))).isFalse();
+  }
+
+  @Test
+  public void testResetSyncStateWhenSyncedBuildsAreEvicted() throws Exception {
+    BuildCache cache = BuildCache.load(temp.newFolder(), CI_URL, 1);
+    cache.put(new Build(1, 1000, "SUCCESS", true, 10));
+    cache.put(new Build(2, 2000, "SUCCESS", true, 10));
+    cache.setSynced(new Date(500), 2);
+
+    cache.save();
+
+    assertThat(cache.getSyncedNumber()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci;
+
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.params.HttpConnectionParams;
+import org.junit.After;
+import org.junit.Test;
+import org.sonar.api.config.PropertyDefinitions;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.buildstability.BuildStabilityPlugin;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CiConnectionPoolTest {
+  private CiConnectionPool connectionPool;
+
+  @After
+  public void tearDown() {
+    connectionPool.stop();
+  }
+
+  @Test
+  public void testDefaults() {
+    connectionPool = new CiConnectionPool(new Settings(new PropertyDefinitions(BuildStabilityPlugin.class)));
+
+    assertThat(connectionPool.getConnectionManager().getMaxTotal()).isEqualTo(CiConnectionPool.MAX_CONNECTIONS_DEFAULT_VALUE);
+    assertThat(connectionPool.getConnectionManager().getDefaultMaxPerRoute()).isEqualTo(CiConnectionPool.MAX_CONNECTIONS_PER_ROUTE_DEFAULT_VALUE);
+    assertThat(connectionPool.getConnectTimeout()).isEqualTo(CiConnectionPool.CONNECT_TIMEOUT_DEFAULT_VALUE);
+    assertThat(connectionPool.getSocketTimeout()).isEqualTo(CiConnectionPool.SOCKET_TIMEOUT_DEFAULT_VALUE);
+  }
+
+  @Test
+  public void testDefaultsWithoutDefinitions() {
+    connectionPool = new CiConnectionPool(new Settings());
+
+    assertThat(connectionPool.getConnectionManager().getMaxTotal()).isEqualTo(CiConnectionPool.MAX_CONNECTIONS_DEFAULT_VALUE);
+    assertThat(connectionPool.getSocketTimeout()).isEqualTo(CiConnectionPool.SOCKET_TIMEOUT_DEFAULT_VALUE);
+  }
+
+  @Test
+  public void testCreateClients() {
+    Settings settings = new Settings();
+    settings.setProperty(CiConnectionPool.MAX_CONNECTIONS_PROPERTY, 8);
+    settings.setProperty(CiConnectionPool.MAX_CONNECTIONS_PER_ROUTE_PROPERTY, 4);
+    settings.setProperty(CiConnectionPool.CONNECT_TIMEOUT_PROPERTY, 1000);
+    settings.setProperty(CiConnectionPool.SOCKET_TIMEOUT_PROPERTY, 2000);
+    connectionPool = new CiConnectionPool(settings);
+
+    DefaultHttpClient client1 = connectionPool.createClient();
+    DefaultHttpClient client2 = connectionPool.createClient();
+
+    assertThat(client1.getConnectionManager()).isSameAs(connectionPool.getConnectionManager());
+    assertThat(client2.getConnectionManager()).isSameAs(connectionPool.getConnectionManager());
+    assertThat(client1.getCredentialsProvider()).isNotSameAs(client2.getCredentialsProvider());
+    assertThat(connectionPool.getConnectionManager().getMaxTotal()).isEqualTo(8);
+    assertThat(connectionPool.getConnectionManager().getDefaultMaxPerRoute()).isEqualTo(4);
+    assertThat(HttpConnectionParams.getConnectionTimeout(client1.getParams())).isEqualTo(1000);
+    assertThat(HttpConnectionParams.getSoTimeout(client1.getParams())).isEqualTo(2000);
+    assertThat(HttpClientParams.getConnectionManagerTimeout(client1.getParams())).isEqualTo(2000L);
+    assertThat(((DefaultHttpRequestRetryHandler) client1.getHttpRequestRetryHandler()).getRetryCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testShareThrottlesOfSameSettings() {
+    connectionPool = new CiConnectionPool(new Settings());
+
+    RequestThrottle throttle = connectionPool.getThrottle("http://jenkins", 10, true);
+
+    assertThat(connectionPool.getThrottle("http://jenkins", 10, true)).isSameAs(throttle);
+    assertThat(connectionPool.getThrottle("http://jenkins", 5, true)).isNotSameAs(throttle);
+    assertThat(connectionPool.getThrottle("http://jenkins", 10, false)).isNotSameAs(throttle);
+    assertThat(connectionPool.getThrottle("http://bamboo", 10, true)).isNotSameAs(throttle);
+  }
+}
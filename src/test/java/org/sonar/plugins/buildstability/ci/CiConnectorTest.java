@@ -19,19 +19,40 @@
  */
 package org.sonar.plugins.buildstability.ci;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.impl.client.DefaultHttpClient;
 import org.dom4j.Element;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.config.Settings;
 import org.sonar.plugins.buildstability.ci.api.AbstractServer;
 import org.sonar.plugins.buildstability.ci.api.Build;
 import org.sonar.plugins.buildstability.ci.api.Unmarshaller;
+import org.sonar.plugins.buildstability.ci.bamboo.BambooBuildUnmarshaller;
+import org.sonar.plugins.buildstability.ci.jenkins.JenkinsBuildJsonUnmarshaller;
+import org.sonar.plugins.buildstability.ci.jenkins.JenkinsBuildUnmarshaller;
+import org.sonar.plugins.buildstability.ci.jenkins.JenkinsServer;
 import org.sonar.plugins.buildstability.util.MockHttpServerInterceptor;
 
+import java.io.File;
 import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.MapAssert.entry;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -42,23 +63,32 @@ import static org.mockito.Mockito.when;
 public class CiConnectorTest {
 
   private CiConnector connector;
+  private CiConnectionPool connectionPool;
   private AbstractServer server;
 
   @Rule
   public MockHttpServerInterceptor httpServer = new MockHttpServerInterceptor();
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
   private Unmarshaller<Build> unmarshaller;
   private Build lastBuild;
 
   @Before
   public void setUp() throws Exception {
     server = mock(AbstractServer.class);
-    connector = new CiConnector(server);
+    connectionPool = new CiConnectionPool(new Settings());
+    connector = new CiConnector(server, connectionPool);
     when(server.getLastBuildUrl()).thenReturn("http://localhost:" + httpServer.getPort());
     unmarshaller = mock(Unmarshaller.class);
     when(server.getBuildUnmarshaller()).thenReturn(unmarshaller);
     lastBuild = mock(Build.class);
   }
 
+  @After
+  public void tearDown() {
+    connectionPool.stop();
+  }
+
   @Test
   public void testGetEncodingFromHttpHeader() throws Exception {
     httpServer.addMockResponseData("<?xml version=\"1.0\" standalone=\"yes\"?><foo>éàç</foo>");
@@ -67,6 +97,17 @@ public class CiConnectorTest {
     assertThat(connector.getBuilds(1)).hasSize(1);
   }
 
+  @Test
+  public void testCompressedResponse() throws Exception {
+    httpServer.setCompressResponses(true);
+    httpServer.addMockResponseData("<?xml version=\"1.0\" encoding=\"UTF-8\"?><build>" + StringUtils.repeat("<foo>éàç</foo>", 100) + "</build>");
+    when(unmarshaller.toModel(any(Element.class))).thenReturn(lastBuild);
+
+    assertThat(connector.getBuilds(1)).hasSize(1);
+    assertThat(connector.getContentBytes()).isGreaterThan(1000);
+    assertThat(connector.getWireBytes()).isGreaterThan(0).isLessThan(connector.getContentBytes() / 10);
+  }
+
   @Test
   public void testGetBuilds() throws Exception {
     httpServer.addMockResponseData("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><foo></foo>");
@@ -109,6 +150,23 @@ public class CiConnectorTest {
     connector.getBuilds(5);
   }
 
+  @Test(timeout = 10000)
+  public void testReleaseConnectionWhenLoginRenewalFails() throws Exception {
+    when(server.renewLogin(any(DefaultHttpClient.class))).thenThrow(new IllegalStateException("Login failed"));
+    connector.setThrottle(new RequestThrottle(0, 1, false));
+    httpServer.addMockResponseStatusAndData(403, "");
+    httpServer.addMockResponseStatusAndData(403, "");
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        connector.getBuilds(1);
+        fail();
+      } catch (IllegalStateException e) {
+        assertThat(e.getMessage()).isEqualTo("Login failed");
+      }
+    }
+  }
+
   @Test(expected = IllegalStateException.class)
   public void testInvalidXmlResponse() throws Exception {
     httpServer.addMockResponseData("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><invalid></foo>");
@@ -126,12 +184,12 @@ public class CiConnectorTest {
     httpServer.addMockResponseData("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><foo></foo>");
     httpServer.addMockResponseData("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><foo></foo>");
     httpServer.addMockResponseData("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><foo></foo>");
-    when(lastBuild.getDate()).thenReturn(sdf.parse("05/04/2013"));
+    when(lastBuild.getTimestamp()).thenReturn(sdf.parse("05/04/2013").getTime());
     when(lastBuild.getNumber()).thenReturn(10);
     Build otherBuild = mock(Build.class);
-    when(otherBuild.getDate()).thenReturn(sdf.parse("04/04/2013"));
+    when(otherBuild.getTimestamp()).thenReturn(sdf.parse("04/04/2013").getTime());
     Build olderBuild = mock(Build.class);
-    when(olderBuild.getDate()).thenReturn(sdf.parse("03/04/2013"));
+    when(olderBuild.getTimestamp()).thenReturn(sdf.parse("03/04/2013").getTime());
 
     when(unmarshaller.toModel(any(Element.class)))
       .thenReturn(lastBuild, otherBuild, otherBuild, olderBuild);
@@ -146,14 +204,375 @@ public class CiConnectorTest {
     httpServer.addMockResponseData("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><foo></foo>");
     when(server.getBuildUrl(anyString())).thenReturn("http://localhost:" + httpServer.getPort());
     httpServer.addMockResponseData("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><foo></foo>");
-    when(lastBuild.getDate()).thenReturn(sdf.parse("05/04/2013"));
+    when(lastBuild.getTimestamp()).thenReturn(sdf.parse("05/04/2013").getTime());
     when(lastBuild.getNumber()).thenReturn(2);
     Build otherBuild = mock(Build.class);
-    when(otherBuild.getDate()).thenReturn(sdf.parse("04/04/2013"));
+    when(otherBuild.getTimestamp()).thenReturn(sdf.parse("04/04/2013").getTime());
 
     when(unmarshaller.toModel(any(Element.class)))
       .thenReturn(lastBuild, otherBuild);
 
     assertThat(connector.getBuildsSince(sdf.parse("01/04/2013"))).hasSize(2);
   }
+
+  @Test
+  public void testGetBuildsSinceDateFromBuildsPage() throws Exception {
+    httpServer.addMockResponseData(IOUtils.toString(getClass().getResourceAsStream("jenkins/builds.xml")));
+    when(server.getBuildsUrl(any(Date.class), anyInt(), anyInt())).thenReturn("http://localhost:" + httpServer.getPort());
+    when(server.getBuildsElementName()).thenReturn("allBuild");
+    when(server.getBuildUnmarshaller()).thenReturn(new JenkinsBuildUnmarshaller());
+
+    List<Build> builds = connector.getBuildsSince(new Date(1365150000000L));
+
+    assertThat(builds).hasSize(2);
+    assertThat(builds.get(0).getNumber()).isEqualTo(421);
+    assertThat(builds.get(0).getDuration()).isEqualTo(120000.0);
+    assertThat(builds.get(1).getNumber()).isEqualTo(420);
+    assertThat(builds.get(1).isSuccessful()).isFalse();
+  }
+
+  @Test
+  public void testGetBuildsSinceDateWhenBuildsPageIgnoresRange() throws Exception {
+    connector = CiFactory.create("Jenkins:http://localhost:" + httpServer.getPort() + "/job/project", null, null, false, connectionPool);
+    httpServer.addMockResponseDataForPath("/job/project/api/xml", Payloads.buildsPage(JenkinsServer.SYSTEM, Payloads.XML, 150));
+
+    List<Build> builds = connector.getBuildsSince(new Date(0));
+
+    assertThat(builds).hasSize(150);
+    assertThat(httpServer.getRequestedPaths()).hasSize(1);
+  }
+
+  @Test
+  public void testGetBuildsSinceDateWhenBuildsPageRepeats() throws Exception {
+    connector = CiFactory.create("Jenkins:http://localhost:" + httpServer.getPort() + "/job/project", null, null, false, connectionPool);
+    httpServer.addMockResponseDataForPath("/job/project/api/xml", Payloads.buildsPage(JenkinsServer.SYSTEM, Payloads.XML, 100));
+
+    List<Build> builds = connector.getBuildsSince(new Date(0));
+
+    assertThat(builds).hasSize(100);
+    assertThat(httpServer.getRequestedPaths()).hasSize(2);
+  }
+
+  @Test
+  public void testGetBuildsSinceDateFallbackWhenBuildsPageNotSupported() throws Exception {
+    SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy");
+
+    httpServer.addMockResponseStatusAndData(400, "");
+    when(server.getBuildsUrl(any(Date.class), anyInt(), anyInt())).thenReturn("http://localhost:" + httpServer.getPort());
+    when(server.getBuildsElementName()).thenReturn("allBuild");
+    httpServer.addMockResponseData("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><foo></foo>");
+    when(server.getBuildUrl(anyString())).thenReturn("http://localhost:" + httpServer.getPort());
+    httpServer.addMockResponseData("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><foo></foo>");
+    when(lastBuild.getTimestamp()).thenReturn(sdf.parse("05/04/2013").getTime());
+    when(lastBuild.getNumber()).thenReturn(10);
+    Build olderBuild = mock(Build.class);
+    when(olderBuild.getTimestamp()).thenReturn(sdf.parse("03/04/2013").getTime());
+
+    when(unmarshaller.toModel(any(Element.class)))
+      .thenReturn(lastBuild, olderBuild);
+
+    assertThat(connector.getBuildsSince(sdf.parse("04/04/2013"))).hasSize(1);
+  }
+
+  @Test
+  public void testGetBuildsSinceDateNoFallbackWhenBuildsPageFails() throws Exception {
+    httpServer.addMockResponseStatusAndData(403, "");
+    when(server.getBuildsUrl(any(Date.class), anyInt(), anyInt())).thenReturn("http://localhost:" + httpServer.getPort() + "/builds");
+    when(server.getLastBuildUrl()).thenReturn("http://localhost:" + httpServer.getPort() + "/lastBuild");
+
+    try {
+      connector.getBuildsSince(new Date(0));
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).startsWith("Received 403");
+    }
+    assertThat(httpServer.getRequestedPaths()).containsExactly("/builds");
+  }
+
+  @Test
+  public void testGetBuildsSinceDateFromNestedBuildsPage() throws Exception {
+    httpServer.addMockResponseData(IOUtils.toString(getClass().getResourceAsStream("bamboo/results.xml")));
+    when(server.getBuildsUrl(any(Date.class), anyInt(), anyInt())).thenReturn("http://localhost:" + httpServer.getPort());
+    when(server.getBuildsElementName()).thenReturn("result");
+    when(server.getBuildUnmarshaller()).thenReturn(new BambooBuildUnmarshaller());
+
+    List<Build> builds = connector.getBuildsSince(new Date(0));
+
+    assertThat(builds).hasSize(1);
+    assertThat(builds.get(0).getNumber()).isEqualTo(83);
+  }
+
+  @Test
+  public void testGetBuildsSinceDateFromJsonBuildsPage() throws Exception {
+    httpServer.addMockResponseData(IOUtils.toString(getClass().getResourceAsStream("jenkins/builds.json")));
+    when(server.getBuildsUrl(any(Date.class), anyInt(), anyInt())).thenReturn("http://localhost:" + httpServer.getPort());
+    when(server.isUseJson()).thenReturn(true);
+    when(server.getBuildsArrayName()).thenReturn("allBuilds");
+    when(server.getBuildJsonUnmarshaller()).thenReturn(new JenkinsBuildJsonUnmarshaller());
+
+    List<Build> builds = connector.getBuildsSince(new Date(1365150000000L));
+
+    assertThat(builds).hasSize(2);
+    assertThat(builds.get(0).getNumber()).isEqualTo(421);
+    assertThat(builds.get(0).getDuration()).isEqualTo(120000.0);
+    assertThat(builds.get(1).getNumber()).isEqualTo(420);
+    assertThat(builds.get(1).isSuccessful()).isFalse();
+    assertThat(httpServer.getRequestHeaders().get(0)).includes(entry("Accept", "application/json"));
+  }
+
+  @Test
+  public void testFallbackToXmlWhenJsonIsInvalid() throws Exception {
+    connector = CiFactory.create("Jenkins:http://localhost:" + httpServer.getPort() + "/job/project", null, null, false, connectionPool);
+    connector.getServer().setUseJson(true);
+    httpServer.addMockResponseData("{\"number\":\"lastBuild\"}");
+    httpServer.addMockResponseData("<build><number>3</number><timestamp>3000</timestamp><result>SUCCESS</result><duration>1</duration></build>");
+
+    List<Build> builds = connector.getBuilds(1);
+
+    assertThat(builds).hasSize(1);
+    assertThat(builds.get(0).getNumber()).isEqualTo(3);
+    assertThat(connector.getServer().isUseJson()).isFalse();
+    assertThat(httpServer.getRequestedPaths()).containsExactly("/job/project/lastBuild/api/json/", "/job/project/lastBuild/api/xml/");
+  }
+
+  @Test
+  public void testGetBuildsSinceDateConcurrently() throws Exception {
+    String url = "http://localhost:" + httpServer.getPort();
+    when(server.getLastBuildUrl()).thenReturn(url + "/20");
+    for (int i = 1; i <= 20; i++) {
+      when(server.getBuildUrl(eq(String.valueOf(i)))).thenReturn(url + "/" + i);
+      httpServer.addMockResponseDataForPath("/" + i, "<build><number>" + i + "</number><timestamp>" + i * 1000L + "</timestamp>"
+        + "<result>SUCCESS</result><duration>1</duration></build>");
+    }
+    when(server.getBuildUnmarshaller()).thenReturn(new JenkinsBuildUnmarshaller());
+    connector.setFetchThreads(4);
+
+    List<Build> builds = connector.getBuildsSince(new Date(10500));
+
+    assertThat(builds).hasSize(10);
+    for (int i = 0; i < builds.size(); i++) {
+      assertThat(builds.get(i).getNumber()).isEqualTo(20 - i);
+    }
+    assertThat(httpServer.getRequestedPaths()).excludes("/4", "/1");
+  }
+
+  @Test
+  public void testFindFirstBuildSinceDate() throws Exception {
+    String url = "http://localhost:" + httpServer.getPort();
+    for (int i = 1; i <= 100; i++) {
+      when(server.getBuildUrl(eq(String.valueOf(i)))).thenReturn(url + "/" + i);
+      if (i < 40 || i > 45) {
+        httpServer.addMockResponseDataForPath("/" + i, "<build><number>" + i + "</number><timestamp>" + i * 1000L + "</timestamp>"
+          + "<result>SUCCESS</result><duration>1</duration></build>");
+      }
+    }
+    for (int i = 0; i < 40; i++) {
+      httpServer.addMockResponseStatusAndData(404, "");
+    }
+    when(server.getBuildUnmarshaller()).thenReturn(new JenkinsBuildUnmarshaller());
+
+    Map<Integer, Build> probes = new HashMap<Integer, Build>();
+    assertThat(connector.findFirstBuildSince(new Date(60500), 1, 100, probes)).isEqualTo(61);
+    assertThat(probes.size()).isLessThanOrEqualTo(12);
+    assertThat(probes.keySet()).excludes(1, 2, 3);
+
+    assertThat(connector.findFirstBuildSince(new Date(39500), 1, 100, new HashMap<Integer, Build>())).isGreaterThanOrEqualTo(40).isLessThanOrEqualTo(46);
+    assertThat(connector.findFirstBuildSince(new Date(200000), 1, 100, new HashMap<Integer, Build>())).isEqualTo(100);
+  }
+
+  @Test
+  public void testFindFirstBuildSinceDateAfterDiscardedBuilds() throws Exception {
+    final String url = "http://localhost:" + httpServer.getPort();
+    when(server.getBuildUrl(anyString())).thenAnswer(new Answer<String>() {
+      @Override
+      public String answer(InvocationOnMock invocation) {
+        return url + "/" + invocation.getArguments()[0];
+      }
+    });
+    for (int i = 9951; i <= 10000; i++) {
+      httpServer.addMockResponseDataForPath("/" + i, "<build><number>" + i + "</number><timestamp>" + i * 1000L + "</timestamp>"
+        + "<result>SUCCESS</result><duration>1</duration></build>");
+    }
+    for (int i = 0; i < 60; i++) {
+      httpServer.addMockResponseStatusAndData(404, "");
+    }
+    when(server.getBuildUnmarshaller()).thenReturn(new JenkinsBuildUnmarshaller());
+
+    // missing builds are taken as discarded ones, rather than requested one by one
+    assertThat(connector.findFirstBuildSince(new Date(0), 1, 10001, new HashMap<Integer, Build>())).isGreaterThanOrEqualTo(9900).isLessThanOrEqualTo(9951);
+    assertThat(httpServer.getRequestedPaths().size()).isLessThanOrEqualTo(60);
+  }
+
+  @Test
+  public void testGetBuildsSinceDateFromCache() throws Exception {
+    String url = "http://localhost:" + httpServer.getPort();
+    when(server.getLastBuildUrl()).thenReturn(url + "/10");
+    for (int i = 1; i <= 10; i++) {
+      when(server.getBuildUrl(eq(String.valueOf(i)))).thenReturn(url + "/" + i);
+      if (i != 7) {
+        httpServer.addMockResponseDataForPath("/" + i, "<build><number>" + i + "</number><timestamp>" + i * 1000L + "</timestamp>"
+          + "<result>SUCCESS</result><duration>1</duration><building>" + (i == 9) + "</building></build>");
+      }
+    }
+    when(server.getBuildUnmarshaller()).thenReturn(new JenkinsBuildUnmarshaller());
+    httpServer.addMockResponseStatusAndData(404, "");
+    File directory = temp.newFolder();
+    connector.setBuildCache(BuildCache.load(directory, "Jenkins:" + url, 100));
+
+    assertThat(connector.getBuildsSince(new Date(500))).hasSize(9);
+    assertThat(httpServer.getRequestedPaths()).hasSize(10);
+
+    httpServer.getRequestedPaths().clear();
+    httpServer.addMockResponseStatusAndData(404, "");
+    connector.setBuildCache(BuildCache.load(directory, "Jenkins:" + url, 100));
+
+    // the missing build is requested again, as it may be only temporarily unavailable
+    assertThat(connector.getBuildsSince(new Date(500))).hasSize(9);
+    assertThat(httpServer.getRequestedPaths()).containsOnly("/10", "/9", "/7");
+  }
+
+  @Test
+  public void testGetBuildsSinceDateIncrementally() throws Exception {
+    String url = "http://localhost:" + httpServer.getPort();
+    when(server.getLastBuildUrl()).thenReturn(url + "/10");
+    for (int i = 1; i <= 12; i++) {
+      when(server.getBuildUrl(eq(String.valueOf(i)))).thenReturn(url + "/" + i);
+      if (i != 7) {
+        httpServer.addMockResponseDataForPath("/" + i, "<build><number>" + i + "</number><timestamp>" + i * 1000L + "</timestamp>"
+          + "<result>SUCCESS</result><duration>1</duration><building>" + (i == 9) + "</building></build>");
+      }
+    }
+    when(server.getBuildUnmarshaller()).thenReturn(new JenkinsBuildUnmarshaller());
+    httpServer.addMockResponseStatusAndData(404, "");
+    File directory = temp.newFolder();
+    BuildCache cache = BuildCache.load(directory, "Jenkins:" + url, 100);
+    connector.setBuildCache(cache);
+    connector.setIncremental(true);
+
+    assertThat(connector.getBuildsSince(new Date(500))).hasSize(9);
+    assertThat(cache.getSyncedNumber()).isEqualTo(8);
+
+    httpServer.getRequestedPaths().clear();
+    when(server.getLastBuildUrl()).thenReturn(url + "/12");
+    cache = BuildCache.load(directory, "Jenkins:" + url, 100);
+    connector.setBuildCache(cache);
+
+    List<Build> builds = connector.getBuildsSince(new Date(2500));
+
+    assertThat(builds).hasSize(9);
+    assertThat(builds.get(0).getNumber()).isEqualTo(12);
+    assertThat(builds.get(8).getNumber()).isEqualTo(3);
+    assertThat(httpServer.getRequestedPaths()).containsOnly("/12", "/11", "/9");
+    assertThat(cache.getSyncedNumber()).isEqualTo(8);
+    assertThat(cache.contains(2)).isFalse();
+  }
+
+  @Test
+  public void testLastBuildNotModified() throws Exception {
+    String url = "http://localhost:" + httpServer.getPort();
+    when(server.getLastBuildUrl()).thenReturn(url + "/lastBuild");
+    when(server.getBuildUnmarshaller()).thenReturn(new JenkinsBuildUnmarshaller());
+    httpServer.addResponseHeader("ETag", "\"42\"");
+    httpServer.addResponseHeader("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT");
+    httpServer.addMockResponseData("<build><number>42</number><timestamp>1000</timestamp><result>SUCCESS</result>"
+      + "<duration>1</duration><building>true</building></build>");
+    httpServer.addMockResponseStatusAndData(304, "");
+    File directory = temp.newFolder();
+    connector.setBuildCache(BuildCache.load(directory, "Jenkins:" + url, 100));
+
+    assertThat(connector.getLastBuild().getNumber()).isEqualTo(42);
+    connector.getBuildCache().save();
+    connector.setBuildCache(BuildCache.load(directory, "Jenkins:" + url, 100));
+    Build build = connector.getLastBuild();
+
+    assertThat(build.getNumber()).isEqualTo(42);
+    assertThat(build.isBuilding()).isTrue();
+    assertThat(httpServer.getRequestHeaders()).hasSize(2);
+    assertThat(httpServer.getRequestHeaders().get(0)).excludes(entry("If-None-Match", "\"42\""));
+    assertThat(httpServer.getRequestHeaders().get(1)).includes(entry("If-None-Match", "\"42\""),
+      entry("If-Modified-Since", "Wed, 21 Oct 2015 07:28:00 GMT"));
+  }
+
+  @Test
+  public void testPreemptiveAuthentication() throws Exception {
+    JenkinsServer jenkins = new JenkinsServer();
+    jenkins.setHost("http://localhost:" + httpServer.getPort());
+    jenkins.setKey("foo");
+    jenkins.setUsername("user");
+    jenkins.setPassword("secret");
+    connector = new CiConnector(jenkins, connectionPool);
+    httpServer.addMockResponseData("<build><number>2</number><timestamp>2000</timestamp><result>SUCCESS</result><duration>1</duration></build>");
+    httpServer.addMockResponseData("<build><number>1</number><timestamp>1000</timestamp><result>SUCCESS</result><duration>1</duration></build>");
+
+    assertThat(connector.getBuilds(2)).hasSize(2);
+
+    assertThat(httpServer.getRequestHeaders()).hasSize(2);
+    for (Map<String, String> headers : httpServer.getRequestHeaders()) {
+      assertThat(headers).includes(entry("Authorization", "Basic dXNlcjpzZWNyZXQ="));
+    }
+    assertThat(connector.getSavedChallenges()).isEqualTo(2);
+  }
+
+  @Test
+  public void testRetryTemporaryFailures() throws Exception {
+    httpServer.addMockResponseStatusAndData(503, "");
+    httpServer.addMockResponseStatusAndData(502, "");
+    httpServer.addMockResponseData("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><foo></foo>");
+    when(unmarshaller.toModel(any(Element.class))).thenReturn(lastBuild);
+    connector.setRetryBackoff(1);
+
+    assertThat(connector.getBuilds(1)).hasSize(1);
+    assertThat(httpServer.getRequestedPaths()).hasSize(3);
+  }
+
+  @Test
+  public void testRetryDelayOfManyAttempts() throws Exception {
+    for (int attempt : new int[] {0, 10, 63, 64, 100, Integer.MAX_VALUE}) {
+      assertThat(connector.getRetryDelay(attempt, null)).isGreaterThan(0).isLessThanOrEqualTo(30000);
+    }
+    assertThat(connector.getRetryDelay(0, "10")).isEqualTo(10000);
+  }
+
+  @Test
+  public void testKeepPartialBuilds() throws Exception {
+    String url = "http://localhost:" + httpServer.getPort();
+    when(server.getLastBuildUrl()).thenReturn(url + "/10");
+    for (int i = 1; i <= 10; i++) {
+      when(server.getBuildUrl(eq(String.valueOf(i)))).thenReturn(url + "/" + i);
+      if (i != 8) {
+        httpServer.addMockResponseDataForPath("/" + i, "<build><number>" + i + "</number><timestamp>" + i * 1000L + "</timestamp>"
+          + "<result>SUCCESS</result><duration>1</duration></build>");
+      }
+    }
+    when(server.getBuildUnmarshaller()).thenReturn(new JenkinsBuildUnmarshaller());
+    httpServer.addMockResponseStatusAndData(503, "");
+    connector.setMaxRetries(0);
+
+    List<Build> builds = connector.getBuildsSince(new Date(500));
+
+    assertThat(builds).hasSize(2);
+    assertThat(connector.isComplete()).isFalse();
+  }
+
+  @Test
+  public void testStopAtDeadline() throws Exception {
+    String url = "http://localhost:" + httpServer.getPort();
+    when(server.getLastBuildUrl()).thenReturn(url + "/20");
+    for (int i = 1; i <= 20; i++) {
+      when(server.getBuildUrl(eq(String.valueOf(i)))).thenReturn(url + "/" + i);
+      httpServer.addMockResponseDataForPath("/" + i, "<build><number>" + i + "</number><timestamp>" + i * 1000L + "</timestamp>"
+        + "<result>SUCCESS</result><duration>1</duration></build>");
+    }
+    when(server.getBuildUnmarshaller()).thenReturn(new JenkinsBuildUnmarshaller());
+    // 5 requests at once, then 1 request every 200 ms
+    connector.setThrottle(new RequestThrottle(5, 1, false));
+    connector.setDeadline(System.currentTimeMillis() + 500);
+
+    List<Build> builds = connector.getBuildsSince(new Date(500));
+
+    assertThat(builds.size()).isGreaterThan(0).isLessThan(20);
+    assertThat(builds.get(0).getNumber()).isEqualTo(20);
+    assertThat(connector.isDeadlineExceeded()).isTrue();
+    assertThat(connector.isComplete()).isFalse();
+  }
 }
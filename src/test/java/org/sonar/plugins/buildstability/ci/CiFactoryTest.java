@@ -20,6 +20,7 @@
 package org.sonar.plugins.buildstability.ci;
 
 import org.junit.Test;
+import org.sonar.api.config.Settings;
 import org.sonar.plugins.buildstability.ci.bamboo.BambooServer;
 import org.sonar.plugins.buildstability.ci.jenkins.JenkinsServer;
 import org.sonar.plugins.buildstability.ci.teamcity.TeamCityServer;
@@ -30,10 +31,11 @@ import static org.fest.assertions.Assertions.assertThat;
  * @author Julien HENRY
  */
 public class CiFactoryTest {
+  private CiConnectionPool connectionPool = new CiConnectionPool(new Settings());
 
   @Test
   public void testCreateBamboo() {
-    CiConnector connector = CiFactory.create("Bamboo", "http://bamboo/browse/", "user", "pwd", false);
+    CiConnector connector = CiFactory.create("Bamboo", "http://bamboo/browse/", "user", "pwd", false, connectionPool);
 
     assertThat(connector.getServer().getUsername()).isEqualTo("user");
     assertThat(connector.getServer().getPassword()).isEqualTo("pwd");
@@ -43,7 +45,7 @@ public class CiFactoryTest {
 
   @Test
   public void testCreateJenkins() {
-    CiConnector connector = CiFactory.create("Jenkins", "http://jenkins/job/", "user", "pwd", false);
+    CiConnector connector = CiFactory.create("Jenkins", "http://jenkins/job/", "user", "pwd", false, connectionPool);
 
     assertThat(connector.getServer().getUsername()).isEqualTo("user");
     assertThat(connector.getServer().getPassword()).isEqualTo("pwd");
@@ -53,7 +55,7 @@ public class CiFactoryTest {
 
   @Test
   public void testCreateTeamCity() {
-    CiConnector connector = CiFactory.create("TeamCity", "http://teamcity:port/viewType.html?buildTypeId=SonarBuildStability_Install", "user", "pwd", false);
+    CiConnector connector = CiFactory.create("TeamCity", "http://teamcity:port/viewType.html?buildTypeId=SonarBuildStability_Install", "user", "pwd", false, connectionPool);
 
     assertThat(connector.getServer().getUsername()).isEqualTo("user");
     assertThat(connector.getServer().getPassword()).isEqualTo("pwd");
@@ -0,0 +1,72 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CircuitBreakerTest {
+  @Test
+  public void testOpenAfterConsecutiveFailures() {
+    CircuitBreaker circuitBreaker = new CircuitBreaker(3, 60000);
+    circuitBreaker.onFailure();
+    circuitBreaker.onFailure();
+    circuitBreaker.onSuccess();
+    circuitBreaker.onFailure();
+    circuitBreaker.onFailure();
+    assertThat(circuitBreaker.allowRequest()).isTrue();
+
+    circuitBreaker.onFailure();
+
+    assertThat(circuitBreaker.isOpen()).isTrue();
+    assertThat(circuitBreaker.allowRequest()).isFalse();
+  }
+
+  @Test
+  public void testTrialRequest() throws Exception {
+    CircuitBreaker circuitBreaker = new CircuitBreaker(1, 0);
+    circuitBreaker.onFailure();
+
+    assertThat(circuitBreaker.allowRequest()).isTrue();
+    assertThat(circuitBreaker.allowRequest()).isFalse();
+    circuitBreaker.onFailure();
+    assertThat(circuitBreaker.isOpen()).isTrue();
+
+    assertThat(circuitBreaker.allowRequest()).isTrue();
+    circuitBreaker.onSuccess();
+    assertThat(circuitBreaker.isOpen()).isFalse();
+    assertThat(circuitBreaker.allowRequest()).isTrue();
+    assertThat(circuitBreaker.allowRequest()).isTrue();
+  }
+
+  @Test
+  public void testAbortedTrialRequest() throws Exception {
+    CircuitBreaker circuitBreaker = new CircuitBreaker(1, 0);
+    circuitBreaker.onFailure();
+    assertThat(circuitBreaker.allowRequest()).isTrue();
+    assertThat(circuitBreaker.allowRequest()).isFalse();
+
+    circuitBreaker.onAbort();
+
+    assertThat(circuitBreaker.isOpen()).isTrue();
+    assertThat(circuitBreaker.allowRequest()).isTrue();
+  }
+}
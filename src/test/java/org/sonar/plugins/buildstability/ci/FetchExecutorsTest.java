@@ -0,0 +1,81 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FetchExecutorsTest {
+  @Test
+  public void testBoundedExecutor() throws Exception {
+    ExecutorService executor = new FetchExecutors.BoundedExecutor(Executors.newCachedThreadPool(), 3);
+    try {
+      assertThat(getMaxConcurrency(executor, 20)).isEqualTo(3);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testNewExecutor() throws Exception {
+    for (boolean virtualThreads : new boolean[] {true, false}) {
+      ExecutorService executor = FetchExecutors.newExecutor(2, virtualThreads);
+      try {
+        assertThat(getMaxConcurrency(executor, 10)).isEqualTo(2);
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  private static int getMaxConcurrency(ExecutorService executor, int tasks) throws Exception {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger max = new AtomicInteger();
+    List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+    for (int i = 0; i < tasks; i++) {
+      futures.add(executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          int current = running.incrementAndGet();
+          synchronized (max) {
+            max.set(Math.max(max.get(), current));
+          }
+          Thread.sleep(20);
+          running.decrementAndGet();
+          return current;
+        }
+      }));
+    }
+    for (Future<Integer> future : futures) {
+      future.get(10, TimeUnit.SECONDS);
+    }
+    return max.get();
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci;
+
+import org.junit.Test;
+import org.sonar.plugins.buildstability.ci.api.Build;
+import org.sonar.plugins.buildstability.ci.jenkins.JenkinsBuildJsonUnmarshaller;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class JsonStreamingUnmarshallerTest {
+  @Test
+  public void testUnmarshalNestedArrays() throws Exception {
+    String json = "{\"allBuilds\":[{\"number\":2,\"timestamp\":2000,\"result\":\"FAILURE\",\"duration\":20,\"actions\":[{\"allBuilds\":[]}]}],"
+      + "\"page\":{\"allBuilds\":[{\"number\":1,\"timestamp\":1000,\"result\":null,\"duration\":10,\"building\":true}, 3]}}";
+    final List<Build> builds = new ArrayList<Build>();
+    JsonStreamingUnmarshaller<Build> unmarshaller = new JsonStreamingUnmarshaller<Build>("allBuilds", new JenkinsBuildJsonUnmarshaller());
+
+    unmarshaller.unmarshal(new StringReader(json), new StreamingUnmarshaller.Handler<Build>() {
+      @Override
+      public void handle(Build build) {
+        builds.add(build);
+      }
+    });
+
+    assertThat(builds).hasSize(2);
+    assertThat(builds.get(0).getNumber()).isEqualTo(2);
+    assertThat(builds.get(0).getTimestamp()).isEqualTo(2000);
+    assertThat(builds.get(0).isSuccessful()).isFalse();
+    assertThat(builds.get(1).getNumber()).isEqualTo(1);
+    assertThat(builds.get(1).getResult()).isNull();
+    assertThat(builds.get(1).isBuilding()).isTrue();
+  }
+
+  @Test
+  public void testIgnoreOtherArrays() throws Exception {
+    String json = "{\"builds\":[{\"number\":1}],\"allBuilds\":{\"number\":2}}";
+    final List<Build> builds = new ArrayList<Build>();
+    JsonStreamingUnmarshaller<Build> unmarshaller = new JsonStreamingUnmarshaller<Build>("allBuilds", new JenkinsBuildJsonUnmarshaller());
+
+    unmarshaller.unmarshal(new StringReader(json), new StreamingUnmarshaller.Handler<Build>() {
+      @Override
+      public void handle(Build build) {
+        builds.add(build);
+      }
+    });
+
+    assertThat(builds).isEmpty();
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci;
+
+import org.sonar.plugins.buildstability.ci.api.AbstractServer;
+import org.sonar.plugins.buildstability.ci.api.Build;
+import org.sonar.plugins.buildstability.ci.bamboo.BambooServer;
+import org.sonar.plugins.buildstability.ci.jenkins.JenkinsServer;
+import org.sonar.plugins.buildstability.ci.teamcity.TeamCityServer;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Responses of CI servers, shaped after the ones of real servers, with the fields which are not unmarshalled.
+ */
+final class Payloads {
+  static final String XML = "xml";
+  static final String JSON = "json";
+
+  private static final long START = 1365285600000L;
+  private static final long PERIOD = 60 * 60 * 1000L;
+  private static final long DURATION = 12933L;
+
+  /**
+   * Hide utility-class constructor.
+   */
+  private Payloads() {
+  }
+
+  static AbstractServer server(String system) {
+    if (JenkinsServer.SYSTEM.equals(system)) {
+      return new JenkinsServer();
+    } else if (BambooServer.SYSTEM.equals(system)) {
+      return new BambooServer();
+    } else if (TeamCityServer.SYSTEM.equals(system)) {
+      return new TeamCityServer();
+    }
+    throw new IllegalArgumentException("Unknown system: " + system);
+  }
+
+  /**
+   * Builds of the given numbers, one per hour, every fifth one failing.
+   */
+  static Build syntheticBuild(int number) {
+    boolean successful = number % 5 != 0;
+    return new Build(number, START + number * PERIOD, successful ? "SUCCESS" : "FAILURE", successful, DURATION);
+  }
+
+  static String build(String system, String format) {
+    return build(system, format, syntheticBuild(1));
+  }
+
+  /**
+   * Response to the request of a single build.
+   */
+  static String build(String system, String format, Build build) {
+    StringBuilder sb = new StringBuilder();
+    boolean json = JSON.equals(format);
+    if (JenkinsServer.SYSTEM.equals(system)) {
+      appendJenkinsBuild(sb, json, "freeStyleBuild", build);
+    } else if (BambooServer.SYSTEM.equals(system)) {
+      appendBambooResult(sb, json, build);
+    } else {
+      appendTeamCityBuild(sb, json, build);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @param count number of builds, the most recent first
+   */
+  static String buildsPage(String system, String format, int count) {
+    List<Build> builds = new ArrayList<Build>(count);
+    for (int number = count; number > 0; number--) {
+      builds.add(syntheticBuild(number));
+    }
+    return buildsPage(system, format, builds);
+  }
+
+  /**
+   * @param builds the most recent first
+   */
+  static String buildsPage(String system, String format, List<Build> builds) {
+    StringBuilder sb = new StringBuilder();
+    boolean json = JSON.equals(format);
+    int count = builds.size();
+    if (JenkinsServer.SYSTEM.equals(system)) {
+      sb.append(json ? "{\"_class\":\"hudson.model.FreeStyleProject\",\"allBuilds\":[" : "<freeStyleProject _class=\"hudson.model.FreeStyleProject\">");
+      for (int i = 0; i < count; i++) {
+        sb.append(json && i > 0 ? "," : "");
+        appendJenkinsBuild(sb, json, "allBuild", builds.get(i));
+      }
+      sb.append(json ? "]}" : "</freeStyleProject>");
+    } else if (BambooServer.SYSTEM.equals(system)) {
+      sb.append(json ? "{\"expand\":\"results\",\"results\":{\"size\":" + count + ",\"expand\":\"result\",\"start-index\":0,\"max-result\":" + count
+        + ",\"result\":[" : "<results expand=\"results\"><results size=\"" + count + "\" expand=\"result\" start-index=\"0\" max-result=\"" + count + "\">");
+      for (int i = 0; i < count; i++) {
+        sb.append(json && i > 0 ? "," : "");
+        appendBambooResult(sb, json, builds.get(i));
+      }
+      sb.append(json ? "]}}" : "</results></results>");
+    } else {
+      sb.append(json ? "{\"count\":" + count + ",\"build\":[" : "<builds count=\"" + count + "\">");
+      for (int i = 0; i < count; i++) {
+        sb.append(json && i > 0 ? "," : "");
+        appendTeamCityBuild(sb, json, builds.get(i));
+      }
+      sb.append(json ? "]}" : "</builds>");
+    }
+    return sb.toString();
+  }
+
+  private static void appendJenkinsBuild(StringBuilder sb, boolean json, String elementName, Build build) {
+    int number = build.getNumber();
+    long duration = (long) build.getDuration();
+    String result = build.isSuccessful() ? "SUCCESS" : "FAILURE";
+    // Builds of a page are filtered with the tree parameter, a single build is not
+    boolean full = !"allBuild".equals(elementName);
+    if (json) {
+      sb.append("{\"_class\":\"hudson.model.FreeStyleBuild\",");
+      if (full) {
+        sb.append("\"actions\":[{\"_class\":\"hudson.model.CauseAction\",\"causes\":[{\"shortDescription\":\"Started by an SCM change\"}]}],")
+          .append("\"changeSet\":{\"items\":[],\"kind\":\"git\"},\"culprits\":[],\"description\":null,\"displayName\":\"#").append(number)
+          .append("\",\"estimatedDuration\":12000,\"executor\":null,\"url\":\"http://jenkins/job/bench/").append(number).append("/\",");
+      }
+      sb.append("\"building\":false,\"duration\":").append(duration)
+        .append(",\"number\":").append(number)
+        .append(",\"result\":\"").append(result)
+        .append("\",\"timestamp\":").append(build.getTimestamp()).append("}");
+    } else {
+      sb.append("<").append(elementName).append(" _class=\"hudson.model.FreeStyleBuild\">");
+      if (full) {
+        sb.append("<action _class=\"hudson.model.CauseAction\"><cause><shortDescription>Started by an SCM change</shortDescription></cause></action>")
+          .append("<changeSet><kind>git</kind></changeSet><displayName>#").append(number)
+          .append("</displayName><estimatedDuration>12000</estimatedDuration><url>http://jenkins/job/bench/").append(number).append("/</url>");
+      }
+      sb.append("<building>false</building>")
+        .append("<duration>").append(duration).append("</duration>")
+        .append("<number>").append(number).append("</number>")
+        .append("<result>").append(result).append("</result>")
+        .append("<timestamp>").append(build.getTimestamp()).append("</timestamp>")
+        .append("</").append(elementName).append(">");
+    }
+  }
+
+  private static void appendBambooResult(StringBuilder sb, boolean json, Build build) {
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+    format.setTimeZone(TimeZone.getTimeZone("America/Chicago"));
+    int number = build.getNumber();
+    long duration = (long) build.getDuration();
+    String started = format.format(new Date(build.getTimestamp()));
+    String completed = format.format(new Date(build.getTimestamp() + duration));
+    String state = build.isSuccessful() ? "Successful" : "Failed";
+    String key = "SONAR-BUILDSTABILITY-" + number;
+    if (json) {
+      sb.append("{\"restartable\":false,\"continuable\":false,\"id\":").append(312705576 + number)
+        .append(",\"number\":").append(number)
+        .append(",\"lifeCycleState\":\"Finished\",\"state\":\"").append(state)
+        .append("\",\"key\":\"").append(key)
+        .append("\",\"link\":{\"rel\":\"self\",\"href\":\"https://bamboo/rest/api/latest/result/").append(key)
+        .append("\"},\"planName\":\"BUILDSTABILITY\",\"projectName\":\"Sonar\",\"buildStartedTime\":\"").append(started)
+        .append("\",\"buildCompletedTime\":\"").append(completed)
+        .append("\",\"buildDurationInSeconds\":").append(duration / 1000)
+        .append(",\"buildDuration\":").append(duration)
+        .append(",\"buildTestSummary\":\"No tests found\",\"successfulTestCount\":0,\"failedTestCount\":0}");
+    } else {
+      sb.append("<result restartable=\"false\" continuable=\"false\" id=\"").append(312705576 + number)
+        .append("\" number=\"").append(number)
+        .append("\" lifeCycleState=\"Finished\" state=\"").append(state)
+        .append("\" key=\"").append(key).append("\">")
+        .append("<link rel=\"self\" href=\"https://bamboo/rest/api/latest/result/").append(key).append("\"/>")
+        .append("<planName>BUILDSTABILITY</planName><projectName>Sonar</projectName>")
+        .append("<buildStartedTime>").append(started).append("</buildStartedTime>")
+        .append("<buildCompletedTime>").append(completed).append("</buildCompletedTime>")
+        .append("<buildDurationInSeconds>").append(duration / 1000).append("</buildDurationInSeconds>")
+        .append("<buildDuration>").append(duration).append("</buildDuration>")
+        .append("<buildTestSummary>No tests found</buildTestSummary><successfulTestCount>0</successfulTestCount><failedTestCount>0</failedTestCount>")
+        .append("</result>");
+    }
+  }
+
+  private static void appendTeamCityBuild(StringBuilder sb, boolean json, Build build) {
+    SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd'T'HHmmssZ");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    int number = build.getNumber();
+    String startDate = format.format(new Date(build.getTimestamp()));
+    String finishDate = format.format(new Date(build.getTimestamp() + (long) build.getDuration()));
+    String status = build.isSuccessful() ? "SUCCESS" : "FAILURE";
+    if (json) {
+      sb.append("{\"id\":").append(number + 13)
+        .append(",\"number\":\"").append(number)
+        .append("\",\"status\":\"").append(status)
+        .append("\",\"href\":\"/httpAuth/app/rest/builds/id:").append(number + 13)
+        .append("\",\"startDate\":\"").append(startDate)
+        .append("\",\"finishDate\":\"").append(finishDate).append("\"}");
+    } else {
+      sb.append("<build id=\"").append(number + 13)
+        .append("\" number=\"").append(number)
+        .append("\" status=\"").append(status)
+        .append("\" href=\"/httpAuth/app/rest/builds/id:").append(number + 13).append("\">")
+        .append("<startDate>").append(startDate).append("</startDate>")
+        .append("<finishDate>").append(finishDate).append("</finishDate>")
+        .append("</build>");
+    }
+  }
+}
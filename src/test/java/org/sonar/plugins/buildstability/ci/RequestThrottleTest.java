@@ -0,0 +1,113 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RequestThrottleTest {
+  @Test
+  public void testLimitRate() throws Exception {
+    RequestThrottle throttle = new RequestThrottle(20, 100, false);
+    long start = System.nanoTime();
+    for (int i = 0; i < 30; i++) {
+      throttle.acquire();
+      throttle.release(0, 200);
+    }
+
+    // 20 requests of the initial burst, then 10 requests at 20 per second
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(400);
+  }
+
+  @Test
+  public void testLimitConcurrency() throws Exception {
+    final RequestThrottle throttle = new RequestThrottle(0, 1, false);
+    final AtomicBoolean acquired = new AtomicBoolean();
+    throttle.acquire();
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          throttle.acquire();
+          acquired.set(true);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    thread.start();
+    thread.join(100);
+    assertThat(acquired.get()).isFalse();
+
+    throttle.release(0, 200);
+    thread.join(5000);
+    assertThat(acquired.get()).isTrue();
+  }
+
+  @Test
+  public void testWaitUntilDeadline() throws Exception {
+    RequestThrottle throttle = new RequestThrottle(0, 1, false);
+    assertThat(throttle.acquire(System.currentTimeMillis() + 1000)).isTrue();
+
+    long start = System.nanoTime();
+    assertThat(throttle.acquire(System.currentTimeMillis() + 100)).isFalse();
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(90).isLessThan(5000);
+
+    throttle.release(0, 200);
+    assertThat(throttle.acquire(System.currentTimeMillis() + 100)).isTrue();
+  }
+
+  @Test
+  public void testAdaptConcurrency() throws Exception {
+    RequestThrottle throttle = new RequestThrottle(0, 8, true);
+    assertThat(throttle.getLimit()).isEqualTo(8);
+
+    throttle.acquire();
+    throttle.release(1000, 503);
+    assertThat(throttle.getLimit()).isEqualTo(4);
+    throttle.acquire();
+    throttle.release(1000, 429);
+    assertThat(throttle.getLimit()).isEqualTo(2);
+
+    for (int i = 0; i < 10; i++) {
+      throttle.acquire();
+      throttle.release(1000, 200);
+    }
+    assertThat(throttle.getLimit()).isGreaterThan(2);
+
+    int limit = throttle.getLimit();
+    throttle.acquire();
+    throttle.release(10000, 200);
+    assertThat(throttle.getLimit()).isLessThan(limit);
+  }
+
+  @Test
+  public void testIgnoreResponsesWhenNotAdaptive() throws Exception {
+    RequestThrottle throttle = new RequestThrottle(0, 8, false);
+    throttle.acquire();
+    throttle.release(1000, 503);
+
+    assertThat(throttle.getLimit()).isEqualTo(8);
+  }
+}
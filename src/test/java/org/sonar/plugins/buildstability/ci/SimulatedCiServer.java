@@ -0,0 +1,327 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.mortbay.jetty.HttpConnection;
+import org.mortbay.jetty.Request;
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.handler.AbstractHandler;
+import org.sonar.plugins.buildstability.ci.api.Build;
+import org.sonar.plugins.buildstability.ci.api.TimestampParser;
+import org.sonar.plugins.buildstability.ci.bamboo.BambooServer;
+import org.sonar.plugins.buildstability.ci.jenkins.JenkinsServer;
+import org.sonar.plugins.buildstability.ci.teamcity.TeamCityServer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stand-in for a Jenkins, Bamboo or TeamCity server, answering the requests of {@link CiConnector} about the given
+ * builds, with a latency, and failures. Missing build numbers are answered with 404, like deleted builds are.
+ * Unlike {@link org.sonar.plugins.buildstability.util.MockHttpServer}, concurrent requests are answered concurrently.
+ */
+public final class SimulatedCiServer {
+  public static final String KEY = "simulated";
+
+  private static final Pattern JENKINS_RANGE = Pattern.compile("\\{(\\d+),(\\d+)\\}");
+  private static final Pattern TEAMCITY_COUNT = Pattern.compile("count:(\\d+)");
+  private static final Pattern TEAMCITY_START = Pattern.compile("start:(\\d+)");
+  private static final Pattern TEAMCITY_SINCE = Pattern.compile("sinceDate:([^,]+)");
+
+  private final String system;
+  private final List<Build> builds;
+  private final Map<Integer, Build> buildsByNumber = new HashMap<Integer, Build>();
+  private Server server;
+  private volatile long latency;
+  private volatile long jitter;
+  private volatile double errorRate;
+  private volatile boolean listBuilds = true;
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger errors = new AtomicInteger();
+  private final AtomicLong bytes = new AtomicLong();
+
+  /**
+   * @param system one of {@link JenkinsServer#SYSTEM}, {@link BambooServer#SYSTEM} or {@link TeamCityServer#SYSTEM}
+   */
+  public SimulatedCiServer(String system, List<Build> builds) {
+    this.system = system;
+    this.builds = new ArrayList<Build>(builds);
+    Collections.sort(this.builds, new Comparator<Build>() {
+      @Override
+      public int compare(Build o1, Build o2) {
+        return o2.getNumber() - o1.getNumber();
+      }
+    });
+    for (Build build : builds) {
+      buildsByNumber.put(build.getNumber(), build);
+    }
+  }
+
+  public void start() throws Exception {
+    // 0 is random available port
+    server = new Server(0);
+    server.setHandler(new AbstractHandler() {
+      @Override
+      public void handle(String target, HttpServletRequest request, HttpServletResponse response, int dispatch) throws IOException {
+        Request baseRequest = request instanceof Request ? (Request) request : HttpConnection.getCurrentConnection().getRequest();
+        SimulatedCiServer.this.handle(target, request, response);
+        baseRequest.setHandled(true);
+      }
+    });
+    server.start();
+  }
+
+  public void stop() {
+    try {
+      if (server != null) {
+        server.stop();
+      }
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to stop HTTP server", e);
+    }
+  }
+
+  /**
+   * URL of the server, in the format of {@link CiFactory#create(String, String, String, boolean, CiConnectionPool)}.
+   */
+  public String getUrl() {
+    String host = "http://localhost:" + server.getConnectors()[0].getLocalPort();
+    if (JenkinsServer.SYSTEM.equals(system)) {
+      return system + ":" + host + JenkinsServer.PATTERN + KEY;
+    } else if (BambooServer.SYSTEM.equals(system)) {
+      return system + ":" + host + BambooServer.PATTERN + KEY;
+    }
+    return system + ":" + host + TeamCityServer.PATTERN + KEY;
+  }
+
+  /**
+   * Time in milliseconds each request waits before being answered.
+   */
+  public void setLatency(long latency) {
+    this.latency = latency;
+  }
+
+  /**
+   * Maximum time in milliseconds randomly added to the latency of each request.
+   */
+  public void setJitter(long jitter) {
+    this.jitter = jitter;
+  }
+
+  /**
+   * Probability for a request to be answered with 503.
+   */
+  public void setErrorRate(double errorRate) {
+    this.errorRate = errorRate;
+  }
+
+  /**
+   * When <code>false</code>, requests listing builds are rejected, like old servers do, so that builds are retrieved
+   * one by one.
+   */
+  public void setListBuilds(boolean listBuilds) {
+    this.listBuilds = listBuilds;
+  }
+
+  public int getRequests() {
+    return requests.get();
+  }
+
+  /**
+   * Number of requests answered with 503.
+   */
+  public int getErrors() {
+    return errors.get();
+  }
+
+  /**
+   * Bytes of response bodies sent, once compressed.
+   */
+  public long getBytes() {
+    return bytes.get();
+  }
+
+  private void handle(String target, HttpServletRequest request, HttpServletResponse response) throws IOException {
+    requests.incrementAndGet();
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long delay = latency + (jitter > 0 ? random.nextLong(jitter + 1) : 0);
+    if (delay > 0) {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while simulating latency");
+      }
+    }
+    if (errorRate > 0 && random.nextDouble() < errorRate) {
+      errors.incrementAndGet();
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      return;
+    }
+    String body;
+    String format;
+    if (JenkinsServer.SYSTEM.equals(system)) {
+      format = target.contains("/api/json") ? Payloads.JSON : Payloads.XML;
+      body = handleJenkins(target, request, format);
+    } else {
+      String accept = request.getHeader("Accept");
+      format = accept != null && accept.contains("json") ? Payloads.JSON : Payloads.XML;
+      body = BambooServer.SYSTEM.equals(system) ? handleBamboo(target, request, format) : handleTeamCity(target, request, format);
+    }
+    if (body == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+    } else if (body.isEmpty()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+    } else {
+      write(request, response, format, body);
+    }
+  }
+
+  /**
+   * @return <code>null</code> for a missing build, an empty string for a rejected request
+   */
+  private String handleJenkins(String target, HttpServletRequest request, String format) {
+    String job = "/job/" + KEY + "/";
+    if (!target.startsWith(job)) {
+      return null;
+    }
+    String path = target.substring(job.length());
+    if (path.startsWith("api/")) {
+      String tree = request.getParameter("tree");
+      Matcher matcher = tree != null ? JENKINS_RANGE.matcher(tree) : null;
+      if (!listBuilds || matcher == null || !matcher.find()) {
+        return "";
+      }
+      int start = Integer.parseInt(matcher.group(1));
+      int end = Integer.parseInt(matcher.group(2));
+      return Payloads.buildsPage(system, format, subList(start, end - start));
+    }
+    String number = path.substring(0, path.indexOf('/'));
+    return getBuild(format, "lastBuild".equals(number) ? getLastBuild() : getBuild(number));
+  }
+
+  private String handleBamboo(String target, HttpServletRequest request, String format) {
+    String plan = "/rest/api/latest/result/" + KEY;
+    if (target.startsWith(plan + "/")) {
+      return getBuild(format, getBuild(target.substring(plan.length() + 1)));
+    } else if (!target.equals(plan)) {
+      return null;
+    }
+    String expand = request.getParameter("expand");
+    if (expand != null && expand.contains("[0]")) {
+      // The last build is the first of a page of one build
+      return Payloads.buildsPage(system, format, subList(0, 1));
+    }
+    String maxResult = request.getParameter("max-result");
+    if (!listBuilds || maxResult == null) {
+      return "";
+    }
+    String startIndex = request.getParameter("start-index");
+    return Payloads.buildsPage(system, format, subList(startIndex != null ? Integer.parseInt(startIndex) : 0, Integer.parseInt(maxResult)));
+  }
+
+  private String handleTeamCity(String target, HttpServletRequest request, String format) {
+    String buildType = "/httpAuth/app/rest/buildTypes/id:" + KEY + "/builds";
+    if (target.equals(buildType + "/count:0")) {
+      return getBuild(format, getLastBuild());
+    } else if (target.startsWith(buildType + "/number:")) {
+      return getBuild(format, getBuild(target.substring(buildType.length() + "/number:".length())));
+    } else if (!target.equals(buildType)) {
+      return null;
+    }
+    String locator = request.getParameter("locator");
+    if (!listBuilds || locator == null) {
+      return "";
+    }
+    Matcher since = TEAMCITY_SINCE.matcher(locator);
+    Matcher count = TEAMCITY_COUNT.matcher(locator);
+    Matcher start = TEAMCITY_START.matcher(locator);
+    // Builds are filtered on date before being paged
+    long sinceTime = since.find() ? TimestampParser.parse(since.group(1)) : Long.MIN_VALUE;
+    List<Build> recent = new ArrayList<Build>();
+    for (Build build : builds) {
+      if (build.getTimestamp() > sinceTime) {
+        recent.add(build);
+      }
+    }
+    int from = start.find() ? Integer.parseInt(start.group(1)) : 0;
+    int size = count.find() ? Integer.parseInt(count.group(1)) : recent.size();
+    return Payloads.buildsPage(system, format, subList(recent, from, size));
+  }
+
+  private String getBuild(String format, Build build) {
+    return build != null ? Payloads.build(system, format, build) : null;
+  }
+
+  private Build getLastBuild() {
+    return builds.isEmpty() ? null : builds.get(0);
+  }
+
+  private Build getBuild(String number) {
+    try {
+      return buildsByNumber.get(Integer.parseInt(number));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private List<Build> subList(int start, int count) {
+    return subList(builds, start, count);
+  }
+
+  private static List<Build> subList(List<Build> builds, int start, int count) {
+    int from = Math.min(start, builds.size());
+    return builds.subList(from, Math.min(from + count, builds.size()));
+  }
+
+  private void write(HttpServletRequest request, HttpServletResponse response, String format, String body) throws IOException {
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType(Payloads.JSON.equals(format) ? "application/json;charset=utf-8" : "text/xml;charset=utf-8");
+    String acceptEncoding = request.getHeader("Accept-Encoding");
+    boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+    if (gzip) {
+      response.setHeader("Content-Encoding", "gzip");
+    }
+    CountingOutputStream counter = new CountingOutputStream(response.getOutputStream());
+    OutputStream output = gzip ? new GZIPOutputStream(counter) : counter;
+    output.write(body.getBytes("UTF-8"));
+    if (gzip) {
+      ((GZIPOutputStream) output).finish();
+    }
+    output.flush();
+    bytes.addAndGet(counter.getByteCount());
+  }
+}
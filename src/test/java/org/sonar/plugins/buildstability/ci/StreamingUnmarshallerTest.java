@@ -0,0 +1,71 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci;
+
+import org.junit.Test;
+import org.sonar.plugins.buildstability.ci.api.Build;
+import org.sonar.plugins.buildstability.ci.jenkins.JenkinsBuildUnmarshaller;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class StreamingUnmarshallerTest {
+  @Test
+  public void testUnmarshalNestedElements() throws Exception {
+    String xml = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>"
+      + "<build><allBuild><number>2</number><timestamp>2000</timestamp><result>FAILURE</result><duration>20</duration></allBuild>"
+      + "<page><allBuild><number>1</number><timestamp>1000</timestamp><result>é</result><duration>10</duration></allBuild></page>"
+      + "</build>";
+    final List<Build> builds = new ArrayList<Build>();
+    StreamingUnmarshaller<Build> unmarshaller = new StreamingUnmarshaller<Build>("allBuild", new JenkinsBuildUnmarshaller());
+
+    unmarshaller.unmarshal(new ByteArrayInputStream(xml.getBytes("ISO-8859-1")), "ISO-8859-1", new StreamingUnmarshaller.Handler<Build>() {
+      @Override
+      public void handle(Build build) {
+        builds.add(build);
+      }
+    });
+
+    assertThat(builds).hasSize(2);
+    assertThat(builds.get(0).getNumber()).isEqualTo(2);
+    assertThat(builds.get(0).getTimestamp()).isEqualTo(2000);
+    assertThat(builds.get(1).getNumber()).isEqualTo(1);
+    assertThat(builds.get(1).getResult()).isEqualTo("é");
+  }
+
+  @Test
+  public void testIgnoreRootElement() throws Exception {
+    String xml = "<allBuild><number>1</number></allBuild>";
+    final List<Build> builds = new ArrayList<Build>();
+    StreamingUnmarshaller<Build> unmarshaller = new StreamingUnmarshaller<Build>("allBuild", new JenkinsBuildUnmarshaller());
+
+    unmarshaller.unmarshal(new ByteArrayInputStream(xml.getBytes("UTF-8")), "UTF-8", new StreamingUnmarshaller.Handler<Build>() {
+      @Override
+      public void handle(Build build) {
+        builds.add(build);
+      }
+    });
+
+    assertThat(builds).isEmpty();
+  }
+}
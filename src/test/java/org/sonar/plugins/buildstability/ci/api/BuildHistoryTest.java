@@ -0,0 +1,104 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci.api;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BuildHistoryTest {
+  @Test
+  public void testAdd() {
+    Build building = new Build(3, 30, null, false, 0);
+    building.setBuilding(true);
+    BuildHistory history = BuildHistory.of(Arrays.asList(
+      new Build(1, 10, "SUCCESS", true, 1000.4),
+      new Build(2, 20, "FAILURE", false, 3e10),
+      building));
+
+    assertThat(history.size()).isEqualTo(3);
+    assertThat(history.getNumber(0)).isEqualTo(1);
+    assertThat(history.getTimestamp(0)).isEqualTo(10L);
+    assertThat(history.getDuration(0)).isEqualTo(1000);
+    assertThat(history.isSuccessful(0)).isTrue();
+    assertThat(history.getStatus(1)).isEqualTo(BuildHistory.FAILED);
+    assertThat(history.getDuration(1)).isEqualTo(Integer.MAX_VALUE);
+    assertThat(history.getStatus(2)).isEqualTo(BuildHistory.BUILDING);
+    assertThat(history.isSuccessful(2)).isFalse();
+  }
+
+  @Test
+  public void testGrow() {
+    BuildHistory history = new BuildHistory(0);
+    assertThat(history.isEmpty()).isTrue();
+    for (int number = 1; number <= 100; number++) {
+      history.add(number, number * 10L, number, BuildHistory.SUCCESSFUL);
+    }
+
+    assertThat(history.size()).isEqualTo(100);
+    assertThat(history.getNumber(99)).isEqualTo(100);
+    assertThat(history.getTimestamp(99)).isEqualTo(1000L);
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testIndexOutOfBounds() {
+    BuildHistory history = new BuildHistory();
+    history.add(1, 10, 100, BuildHistory.SUCCESSFUL);
+
+    history.getNumber(1);
+  }
+
+  @Test
+  public void testSortMostRecentFirst() {
+    BuildHistory history = new BuildHistory();
+    for (int number = 5; number >= 1; number--) {
+      history.add(number, number * 10L, number * 100, number % 2 == 0 ? BuildHistory.FAILED : BuildHistory.SUCCESSFUL);
+    }
+
+    history.sortByNumber();
+
+    for (int i = 0; i < 5; i++) {
+      assertThat(history.getNumber(i)).isEqualTo(i + 1);
+      assertThat(history.getTimestamp(i)).isEqualTo((i + 1) * 10L);
+      assertThat(history.getDuration(i)).isEqualTo((i + 1) * 100);
+      assertThat(history.isSuccessful(i)).isEqualTo(i % 2 == 0);
+    }
+  }
+
+  @Test
+  public void testSortKeepsOrderOfSameNumbers() {
+    BuildHistory history = new BuildHistory();
+    history.add(3, 30, 300, BuildHistory.SUCCESSFUL);
+    history.add(-1, 0, 0, BuildHistory.FAILED);
+    history.add(2, 20, 200, BuildHistory.FAILED);
+    history.add(3, 31, 301, BuildHistory.BUILDING);
+    history.add(1, 10, 100, BuildHistory.SUCCESSFUL);
+
+    history.sortByNumber();
+
+    assertThat(new int[] {history.getNumber(0), history.getNumber(1), history.getNumber(2), history.getNumber(3), history.getNumber(4)})
+      .isEqualTo(new int[] {-1, 1, 2, 3, 3});
+    assertThat(history.getTimestamp(3)).isEqualTo(30L);
+    assertThat(history.getTimestamp(4)).isEqualTo(31L);
+    assertThat(history.getStatus(4)).isEqualTo(BuildHistory.BUILDING);
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci.api;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class TimestampParserTest {
+  @Test
+  public void testParseBambooDateTime() throws Exception {
+    long expected = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").parse("2013-03-12T05:37:01.029-0500").getTime();
+
+    assertThat(TimestampParser.parse("2013-03-12T05:37:01.029-05:00")).isEqualTo(expected);
+    assertThat(TimestampParser.parse("2013-03-12T05:37:01.029-0500")).isEqualTo(expected);
+    assertThat(TimestampParser.parse("2013-03-12T10:37:01.029Z")).isEqualTo(expected);
+    assertThat(TimestampParser.parse("2013-03-12T10:37:01.029123+00:00")).isEqualTo(expected);
+  }
+
+  @Test
+  public void testParseTeamCityDateTime() throws Exception {
+    SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd'T'HHmmssZ");
+
+    assertThat(TimestampParser.parse("20131124T053500+0000")).isEqualTo(format.parse("20131124T053500+0000").getTime());
+    assertThat(TimestampParser.parse("20120229T235959+0130")).isEqualTo(format.parse("20120229T235959+0130").getTime());
+    assertThat(TimestampParser.parse("19691231T235959+0000")).isEqualTo(-1000L);
+  }
+
+  @Test
+  public void testRejectInvalidDateTimes() {
+    String[] invalid = {"", "2013-03-12", "2013-03-12T05:37:01", "2013-03-12T05:37:01.029", "2013-13-12T05:37:01+0000",
+      "2013-03-12T25:37:01+0000", "2013-03-12T05:37:01+00", "2013-03-12T05:37:01+0000 ", "2013-03-1aT05:37:01+0000"};
+    for (String dateTime : invalid) {
+      try {
+        TimestampParser.parse(dateTime);
+        fail(dateTime);
+      } catch (IllegalArgumentException e) {
+        assertThat(e.getMessage()).contains(dateTime);
+      }
+    }
+  }
+}
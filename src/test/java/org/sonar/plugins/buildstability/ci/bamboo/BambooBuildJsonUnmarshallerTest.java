@@ -0,0 +1,70 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci.bamboo;
+
+import com.google.gson.stream.JsonReader;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.plugins.buildstability.ci.api.Build;
+
+import java.io.InputStreamReader;
+import java.io.StringReader;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BambooBuildJsonUnmarshallerTest {
+  private BambooBuildJsonUnmarshaller unmarshaller;
+
+  @Before
+  public void setUp() throws Exception {
+    unmarshaller = new BambooBuildJsonUnmarshaller();
+  }
+
+  @Test
+  public void testUnmarshallResults() throws Exception {
+    JsonReader reader = new JsonReader(new InputStreamReader(getClass().getResourceAsStream("results.json"), "UTF-8"));
+    Build b = unmarshaller.toModel(reader);
+    assertThat(b.getNumber()).isEqualTo(83);
+    assertThat(b.isSuccessful()).isTrue();
+    assertThat(b.getTimestamp()).isGreaterThan(0);
+    assertThat(b.getDuration()).isEqualTo(13000.0);
+    assertThat(b.isBuilding()).isFalse();
+  }
+
+  @Test
+  public void testUnmarshallResult() throws Exception {
+    JsonReader reader = new JsonReader(new InputStreamReader(getClass().getResourceAsStream("result.json"), "UTF-8"));
+    Build b = unmarshaller.toModel(reader);
+    assertThat(b.getNumber()).isEqualTo(82);
+    assertThat(b.isSuccessful()).isTrue();
+    assertThat(b.getTimestamp()).isEqualTo(1363084621029L);
+    assertThat(b.isBuilding()).isFalse();
+  }
+
+  @Test
+  public void testUnmarshallRunningResult() throws Exception {
+    JsonReader reader = new JsonReader(new StringReader(
+      "{\"number\":84,\"lifeCycleState\":\"InProgress\",\"state\":\"Unknown\",\"buildStartedTime\":\"2013-03-12T07:37:01.029-05:00\"}"));
+    Build b = unmarshaller.toModel(reader);
+    assertThat(b.getNumber()).isEqualTo(84);
+    assertThat(b.isSuccessful()).isFalse();
+    assertThat(b.isBuilding()).isTrue();
+  }
+}
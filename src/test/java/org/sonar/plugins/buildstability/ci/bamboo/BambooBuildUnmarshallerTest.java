@@ -50,6 +50,7 @@ public class BambooBuildUnmarshallerTest {
     assertThat(b.getNumber()).isEqualTo(83);
     assertThat(b.isSuccessful()).isTrue();
     assertThat(b.getTimestamp()).isGreaterThan(0);
+    assertThat(b.isBuilding()).isFalse();
   }
 
   @Test
@@ -62,5 +63,6 @@ public class BambooBuildUnmarshallerTest {
     assertThat(b.getNumber()).isEqualTo(82);
     assertThat(b.isSuccessful()).isTrue();
     assertThat(b.getTimestamp()).isGreaterThan(0);
+    assertThat(b.isBuilding()).isFalse();
   }
 }
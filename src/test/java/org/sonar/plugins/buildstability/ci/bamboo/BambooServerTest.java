@@ -22,6 +22,8 @@ package org.sonar.plugins.buildstability.ci.bamboo;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Date;
+
 import static org.fest.assertions.Assertions.assertThat;
 
 /**
@@ -46,4 +48,11 @@ public class BambooServerTest {
   public void testGetBuildURLByNumber() throws Exception {
     assertThat(server.getBuildUrl("1")).isEqualTo("http://bamboo/rest/api/latest/result/KEY/1?os_authType=basic&expand=results.result");
   }
+
+  @Test
+  public void testGetBuildsURL() throws Exception {
+    assertThat(server.getBuildsUrl(new Date(), 100, 50)).isEqualTo(
+      "http://bamboo/rest/api/latest/result/KEY?os_authType=basic&expand=results.result&max-result=50&start-index=100");
+    assertThat(server.getBuildsElementName()).isEqualTo("result");
+  }
 }
@@ -22,6 +22,8 @@ package org.sonar.plugins.buildstability.ci.jenkins;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Date;
+
 import static org.fest.assertions.Assertions.assertThat;
 
 /**
@@ -46,4 +48,32 @@ public class JenkinsServerTest {
   public void testGetBuildURLByNumber() throws Exception {
     assertThat(server.getBuildUrl("1")).isEqualTo("http://jenkins/job/project/1/api/xml/");
   }
+
+  @Test
+  public void testGetBuildsURL() throws Exception {
+    assertThat(server.getBuildsUrl(new Date(), 100, 50)).isEqualTo(
+      "http://jenkins/job/project/api/xml?tree=allBuilds%5Bnumber%2Ctimestamp%2Cresult%2Cduration%2Cbuilding%5D%7B100%2C150%7D");
+    assertThat(server.getBuildsElementName()).isEqualTo("allBuild");
+  }
+
+  @Test
+  public void testJsonURLs() throws Exception {
+    server.setUseJson(true);
+    assertThat(server.getLastBuildUrl()).isEqualTo("http://jenkins/job/project/lastBuild/api/json/");
+    assertThat(server.getBuildsUrl(new Date(), 0, 50)).isEqualTo(
+      "http://jenkins/job/project/api/json?tree=allBuilds%5Bnumber%2Ctimestamp%2Cresult%2Cduration%2Cbuilding%5D%7B0%2C50%7D");
+    assertThat(server.getBuildsArrayName()).isEqualTo("allBuilds");
+  }
+
+  @Test
+  public void testPreemptiveAuthentication() throws Exception {
+    assertThat(server.isPreemptiveAuthentication()).isFalse();
+
+    server.setUsername("user");
+    server.setPassword("secret");
+    assertThat(server.isPreemptiveAuthentication()).isTrue();
+
+    server.setUseJSecurityCheck(true);
+    assertThat(server.isPreemptiveAuthentication()).isFalse();
+  }
 }
@@ -0,0 +1,162 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci.jenkins;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.buildstability.ci.CiConnectionPool;
+import org.sonar.plugins.buildstability.ci.CiConnector;
+import org.sonar.plugins.buildstability.ci.CiFactory;
+import org.sonar.plugins.buildstability.util.MockHttpServerInterceptor;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class JenkinsSessionsTest {
+  private static final String BUILD = "<build><number>1</number><timestamp>1000</timestamp><result>SUCCESS</result><duration>1</duration></build>";
+
+  @Rule
+  public MockHttpServerInterceptor httpServer = new MockHttpServerInterceptor();
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+  private CiConnectionPool connectionPool = new CiConnectionPool(new Settings());
+
+  @After
+  public void tearDown() {
+    JenkinsSessions.clear();
+    connectionPool.stop();
+  }
+
+  @Test
+  public void testKeepSessionBetweenAnalyses() throws Exception {
+    File directory = temp.newFolder();
+    BasicClientCookie cookie = new BasicClientCookie("JSESSIONID", "abc");
+    cookie.setDomain("jenkins");
+    JenkinsSessions.put(directory, "http://jenkins", "user", Arrays.<Cookie>asList(cookie));
+    JenkinsSessions.clear();
+
+    assertThat(JenkinsSessions.get(null, "http://jenkins", "user")).isNull();
+    List<Cookie> cookies = JenkinsSessions.get(directory, "http://jenkins", "user");
+    assertThat(cookies).hasSize(1);
+    assertThat(cookies.get(0).getValue()).isEqualTo("abc");
+    assertThat(JenkinsSessions.get(directory, "http://jenkins", "other")).isNull();
+
+    JenkinsSessions.remove(directory, "http://jenkins", "user");
+    assertThat(JenkinsSessions.get(directory, "http://jenkins", "user")).isNull();
+  }
+
+  @Test
+  public void testKeepSessionInPrivateFile() throws Exception {
+    File directory = temp.newFolder();
+    BasicClientCookie cookie = new BasicClientCookie("JSESSIONID", "abc");
+    cookie.setDomain("jenkins");
+    cookie.setPath("/");
+    cookie.setExpiryDate(new Date(4102444800000L));
+    JenkinsSessions.put(directory, "http://jenkins", "user", Arrays.<Cookie>asList(cookie));
+
+    File[] files = directory.listFiles();
+    assertThat(files).hasSize(1);
+    assertThat(FileUtils.readFileToString(files[0], "UTF-8")).isEqualTo("JSESSIONID\tabc\tjenkins\t/\t4102444800000" + IOUtils.LINE_SEPARATOR);
+    assertThat(Files.getPosixFilePermissions(files[0].toPath()))
+      .isEqualTo(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE));
+
+    JenkinsSessions.clear();
+    List<Cookie> cookies = JenkinsSessions.get(directory, "http://jenkins", "user");
+    assertThat(cookies).hasSize(1);
+    assertThat(cookies.get(0).getDomain()).isEqualTo("jenkins");
+    assertThat(cookies.get(0).getPath()).isEqualTo("/");
+    assertThat(cookies.get(0).getExpiryDate()).isEqualTo(new Date(4102444800000L));
+  }
+
+  @Test
+  public void testIgnoreInvalidSessionFile() throws Exception {
+    File directory = temp.newFolder();
+    JenkinsSessions.put(directory, "http://jenkins", "user", Arrays.<Cookie>asList(new BasicClientCookie("JSESSIONID", "abc")));
+    JenkinsSessions.clear();
+    FileUtils.writeStringToFile(directory.listFiles()[0], "JSESSIONID\tabc\tjenkins\t/\tnever\n");
+
+    assertThat(JenkinsSessions.get(directory, "http://jenkins", "user")).isNull();
+  }
+
+  @Test
+  public void testIgnoreExpiredCookies() throws Exception {
+    BasicClientCookie cookie = new BasicClientCookie("JSESSIONID", "abc");
+    cookie.setExpiryDate(new Date(System.currentTimeMillis() - 1000));
+    JenkinsSessions.put(null, "http://jenkins", "user", Arrays.<Cookie>asList(cookie));
+
+    assertThat(JenkinsSessions.get(null, "http://jenkins", "user")).isNull();
+  }
+
+  @Test
+  public void testReuseAndRenewSession() throws Exception {
+    File directory = temp.newFolder();
+    httpServer.addResponseHeader("Set-Cookie", "JSESSIONID=abc; Path=/");
+    // login page, login form, last build
+    httpServer.addMockResponseData("");
+    httpServer.addMockResponseData("");
+    httpServer.addMockResponseData(BUILD);
+
+    assertThat(newConnector(directory).getBuilds(1)).hasSize(1);
+    assertThat(httpServer.getRequestedPaths()).containsExactly("/login", "/j_acegi_security_check", "/job/foo/lastBuild/api/xml/");
+
+    // session read from disk by another JVM
+    JenkinsSessions.clear();
+    httpServer.getRequestedPaths().clear();
+    httpServer.addMockResponseData(BUILD);
+
+    assertThat(newConnector(directory).getBuilds(1)).hasSize(1);
+    assertThat(httpServer.getRequestedPaths()).containsExactly("/job/foo/lastBuild/api/xml/");
+    Map<String, String> headers = httpServer.getRequestHeaders().get(httpServer.getRequestHeaders().size() - 1);
+    assertThat(headers.get("Cookie")).contains("JSESSIONID=abc");
+
+    // expired session
+    JenkinsSessions.clear();
+    httpServer.getRequestedPaths().clear();
+    httpServer.addMockResponseStatusAndData(403, "");
+    httpServer.addMockResponseData("");
+    httpServer.addMockResponseData("");
+    httpServer.addMockResponseData(BUILD);
+
+    assertThat(newConnector(directory).getBuilds(1)).hasSize(1);
+    assertThat(httpServer.getRequestedPaths()).containsExactly("/job/foo/lastBuild/api/xml/", "/login", "/j_acegi_security_check",
+      "/job/foo/lastBuild/api/xml/");
+  }
+
+  private CiConnector newConnector(File directory) {
+    CiConnector connector = CiFactory.create("Jenkins:http://localhost:" + httpServer.getPort() + "/job/foo", "user", "secret", true, connectionPool);
+    connector.getServer().setCacheDirectory(directory);
+    return connector;
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Sonar Build Stability Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.buildstability.ci.teamcity;
+
+import com.google.gson.stream.JsonReader;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.plugins.buildstability.ci.api.Build;
+
+import java.io.InputStreamReader;
+import java.io.StringReader;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TeamCityBuildJsonUnmarshallerTest {
+  private TeamCityBuildJsonUnmarshaller unmarshaller;
+
+  @Before
+  public void setUp() throws Exception {
+    unmarshaller = new TeamCityBuildJsonUnmarshaller();
+  }
+
+  @Test
+  public void testUnmarshallResult() throws Exception {
+    JsonReader reader = new JsonReader(new InputStreamReader(getClass().getResourceAsStream("result.json"), "UTF-8"));
+    Build b = unmarshaller.toModel(reader);
+    assertThat(b.getNumber()).isEqualTo(6);
+    assertThat(b.isSuccessful()).isTrue();
+    assertThat(b.getTimestamp()).isEqualTo(1385271300000L);
+    assertThat(b.isBuilding()).isFalse();
+    assertThat(b.getDuration()).isEqualTo(20000.0);
+  }
+
+  @Test
+  public void testUnmarshallRunningBuild() throws Exception {
+    JsonReader reader = new JsonReader(new StringReader("{\"number\":\"7\",\"status\":\"SUCCESS\",\"running\":true,\"startDate\":\"20131124T053500+0000\"}"));
+    Build b = unmarshaller.toModel(reader);
+    assertThat(b.getNumber()).isEqualTo(7);
+    assertThat(b.isBuilding()).isTrue();
+    assertThat(b.getDuration()).isEqualTo(0.0);
+  }
+
+  @Test
+  public void testUnmarshallListedBuildWithoutDates() throws Exception {
+    JsonReader reader = new JsonReader(new StringReader("{\"id\":14,\"number\":\"6\",\"status\":\"SUCCESS\"}"));
+    assertThat(unmarshaller.toModel(reader)).isNull();
+  }
+}
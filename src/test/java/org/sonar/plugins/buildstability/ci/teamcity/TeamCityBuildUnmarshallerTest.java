@@ -20,6 +20,7 @@
 package org.sonar.plugins.buildstability.ci.teamcity;
 
 import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
 import org.dom4j.io.SAXReader;
 import org.junit.Before;
 import org.junit.Test;
@@ -50,6 +51,13 @@ public class TeamCityBuildUnmarshallerTest {
     assertThat(b.getNumber()).isEqualTo(6);
     assertThat(b.isSuccessful()).isTrue();
     assertThat(b.getTimestamp()).isGreaterThan(0);
+    assertThat(b.isBuilding()).isFalse();
     assertThat(b.getDuration()).isGreaterThan(0);
   }
+
+  @Test
+  public void testUnmarshallListedBuildWithoutDates() throws Exception {
+    Document doc = DocumentHelper.parseText("<build id=\"14\" number=\"6\" status=\"SUCCESS\" startDate=\"20131124T053500+0000\"/>");
+    assertThat(unmarshaller.toModel(doc.getRootElement())).isNull();
+  }
 }
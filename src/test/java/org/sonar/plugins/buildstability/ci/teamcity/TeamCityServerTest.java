@@ -22,6 +22,10 @@ package org.sonar.plugins.buildstability.ci.teamcity;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
 import static org.fest.assertions.Assertions.assertThat;
 
 /**
@@ -46,4 +50,16 @@ public class TeamCityServerTest {
   public void testGetBuildURLByNumber() throws Exception {
     assertThat(server.getBuildUrl("1")).isEqualTo("http://host:1111/httpAuth/app/rest/buildTypes/id:PROJECT_ID/builds/number:1");
   }
+
+  @Test
+  public void testGetBuildsURL() throws Exception {
+    SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd'T'HHmmssZ");
+    Date since = sdf.parse("20131124T053500+0000");
+
+    assertThat(server.getBuildsUrl(since, 100, 50)).isEqualTo(
+      "http://host:1111/httpAuth/app/rest/buildTypes/id:PROJECT_ID/builds"
+        + "?locator=sinceDate%3A" + URLEncoder.encode(sdf.format(since), "UTF-8") + "%2Ccount%3A50%2Cstart%3A100"
+        + "&fields=build%28number%2Cstatus%2Crunning%2CstartDate%2CfinishDate%29");
+    assertThat(server.getBuildsElementName()).isEqualTo("build");
+  }
 }
@@ -31,8 +31,15 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPOutputStream;
 
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 import static org.apache.commons.io.IOUtils.write;
@@ -41,8 +48,13 @@ public final class MockHttpServer {
   private Server server;
   private String responseBody;
   private String requestBody;
-  private Queue<String> mockResponseData = new LinkedList<String>();
-  private Queue<Integer> mockResponseStatus = new LinkedList<Integer>();
+  private Queue<String> mockResponseData = new ConcurrentLinkedQueue<String>();
+  private Queue<Integer> mockResponseStatus = new ConcurrentLinkedQueue<Integer>();
+  private Map<String, String> mockResponseDataByPath = new ConcurrentHashMap<String, String>();
+  private List<String> requestedPaths = new CopyOnWriteArrayList<String>();
+  private volatile boolean compressResponses;
+  private Map<String, String> responseHeaders = new ConcurrentHashMap<String, String>();
+  private List<Map<String, String>> requestHeaders = new CopyOnWriteArrayList<Map<String, String>>();
 
   public void start() throws Exception {
     // 0 is random available port
@@ -61,17 +73,46 @@ public final class MockHttpServer {
 
       public void handle(String target, HttpServletRequest request, HttpServletResponse response, int dispatch) throws IOException, ServletException {
         Request baseRequest = request instanceof Request ? (Request) request : HttpConnection.getCurrentConnection().getRequest();
-        setResponseBody(mockResponseData.poll());
+        requestedPaths.add(target);
+        Map<String, String> headers = new HashMap<String, String>();
+        for (Enumeration<?> names = request.getHeaderNames(); names.hasMoreElements();) {
+          String name = (String) names.nextElement();
+          headers.put(name, request.getHeader(name));
+        }
+        requestHeaders.add(headers);
+        for (Map.Entry<String, String> header : responseHeaders.entrySet()) {
+          response.setHeader(header.getKey(), header.getValue());
+        }
+        // Concurrent requests each write their own body
+        String body = mockResponseDataByPath.get(target);
+        if (body != null) {
+          response.setStatus(SC_OK);
+        } else {
+          body = mockResponseData.poll();
+          response.setStatus(mockResponseStatus.poll());
+        }
+        setResponseBody(body);
         setRequestBody(IOUtils.toString(baseRequest.getInputStream()));
-        response.setStatus(mockResponseStatus.poll());
-        response.setContentType("text/xml;charset=utf-8");
-        write(getResponseBody(), response.getOutputStream());
+        response.setContentType(isJson(body) ? "application/json;charset=utf-8" : "text/xml;charset=utf-8");
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (compressResponses && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+          response.setHeader("Content-Encoding", "gzip");
+          GZIPOutputStream output = new GZIPOutputStream(response.getOutputStream());
+          write(body, output, "UTF-8");
+          output.finish();
+        } else {
+          write(body, response.getOutputStream());
+        }
         baseRequest.setHandled(true);
       }
     };
     return handler;
   }
 
+  private static boolean isJson(String body) {
+    return body != null && (body.startsWith("{") || body.startsWith("["));
+  }
+
   public void stop() {
     try {
       if (server != null) {
@@ -107,6 +148,38 @@ public final class MockHttpServer {
     this.mockResponseData.add(mockResponseData);
   }
 
+  /**
+   * Responses for a given path are served as many times as requested, whatever the order of requests.
+   */
+  public void addMockResponseDataForPath(String path, String mockResponseData) {
+    this.mockResponseDataByPath.put(path, mockResponseData);
+  }
+
+  /**
+   * Responses are gzipped when requests accept it.
+   */
+  public void setCompressResponses(boolean compressResponses) {
+    this.compressResponses = compressResponses;
+  }
+
+  /**
+   * Header sent with all responses.
+   */
+  public void addResponseHeader(String name, String value) {
+    this.responseHeaders.put(name, value);
+  }
+
+  /**
+   * Headers of each request, in the order of requests.
+   */
+  public List<Map<String, String>> getRequestHeaders() {
+    return requestHeaders;
+  }
+
+  public List<String> getRequestedPaths() {
+    return requestedPaths;
+  }
+
   public int getPort() {
     return server.getConnectors()[0].getLocalPort();
   }
@@ -21,6 +21,9 @@ package org.sonar.plugins.buildstability.util;
 
 import org.junit.rules.ExternalResource;
 
+import java.util.List;
+import java.util.Map;
+
 public final class MockHttpServerInterceptor extends ExternalResource {
 
   private MockHttpServer server;
@@ -44,6 +47,26 @@ public final class MockHttpServerInterceptor extends ExternalResource {
     server.addMockResponseStatusAndData(status, data);
   }
 
+  public void addMockResponseDataForPath(String path, String data) {
+    server.addMockResponseDataForPath(path, data);
+  }
+
+  public void setCompressResponses(boolean compressResponses) {
+    server.setCompressResponses(compressResponses);
+  }
+
+  public void addResponseHeader(String name, String value) {
+    server.addResponseHeader(name, value);
+  }
+
+  public List<Map<String, String>> getRequestHeaders() {
+    return server.getRequestHeaders();
+  }
+
+  public List<String> getRequestedPaths() {
+    return server.getRequestedPaths();
+  }
+
   public int getPort() {
     return server.getPort();
   }